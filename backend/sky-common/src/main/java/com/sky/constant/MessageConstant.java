@@ -24,5 +24,10 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ITEM_NOT_FOUND = "商品不存在";
+    public static final String ITEM_NOT_ON_SALE = "商品已停售";
+    public static final String ORDER_AMOUNT_MISMATCH = "商品价格已变化，请刷新后重新下单";
+    public static final String REPEAT_SUBMIT = "请求正在处理中，请勿重复提交";
+    public static final String ORDER_SUBMIT_FAILED = "下单失败，请稍后重试";
 
 }
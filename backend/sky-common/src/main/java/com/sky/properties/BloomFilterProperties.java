@@ -0,0 +1,18 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.bloom")
+@Data
+public class BloomFilterProperties {
+
+    private boolean enabled = true; //是否开启布隆过滤器校验
+    private double fpp = 0.01; //期望误判率
+    private long menuExpectedInsertions = 10000; //分类、菜品、套餐的预计数量
+    private long orderExpectedInsertions = 1000000; //订单的预计数量
+    private int scanBatchSize = 5000; //重建时每批扫描的id数量
+
+}
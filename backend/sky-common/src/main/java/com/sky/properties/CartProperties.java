@@ -0,0 +1,18 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    private String store = "db"; //购物车存储方式：db 数据库，redis redis哈希
+    private boolean writeBehind = true; //redis存储时是否异步回写数据库
+    private long flushInterval = 5000; //回写间隔，单位毫秒
+    private int flushBatchSize = 200; //每次回写的用户数量
+    private long ttlDays = 7; //redis中购物车无操作后的过期天数
+
+}
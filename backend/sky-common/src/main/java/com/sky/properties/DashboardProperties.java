@@ -0,0 +1,15 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.dashboard")
+@Data
+public class DashboardProperties {
+
+    private boolean live = true; //工作台今日数据和订单统计是否由redis计数器提供，关闭时直接查询数据库
+    private long pushInterval = 1000; //运营数据推送间隔，间隔内的变更合并为一条消息，单位毫秒
+
+}
@@ -0,0 +1,29 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order")
+@Data
+public class OrderProperties {
+
+    private long packFeeCents = 100; //每份商品的打包费，单位分
+    private long deliveryFeeCents = 600; //配送费，单位分
+
+    private boolean groupCommit = false; //是否开启下单批量提交
+    private int batchSize = 64; //每个事务最多提交的订单数
+    private int queueCapacity = 4096; //待提交订单队列容量，队列满时直接单独提交
+    private long lingerMillis = 2; //凑批等待时间，单位毫秒
+    private long submitTimeoutMillis = 5000; //等待提交结果的超时时间，单位毫秒
+
+    private int recentSize = 10; //每个用户缓存的最近订单数量，与小程序历史订单每页条数一致
+    private long recentTtlMinutes = 30; //最近订单redis缓存过期时间，单位分钟
+    private int recentLocalSize = 1000; //本地缓存的用户数量上限
+    private long recentLocalTtlSeconds = 5; //本地缓存过期时间，单位秒
+
+    private long terminalCacheMaxBytes = 64L * 1024 * 1024; //已完成、已取消订单详情缓存的内存上限，单位字节
+    private long terminalCacheTtlSeconds = 24 * 60 * 60; //已完成、已取消订单详情缓存的有效期，变更时已通过事件淘汰，只兜底漏收的淘汰通知，单位秒
+
+}
@@ -0,0 +1,29 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.pay")
+@Data
+public class PayProperties {
+
+    private boolean wechatPay = false; //支付时是否调用微信支付下单，关闭时直接视为支付成功
+    private int notifyWorkers = 4; //处理支付回调的线程数
+    private int notifyQueueCapacity = 1000; //等待处理的支付回调数量上限，超出的由定时任务补偿处理
+    private long notifyRetryDelaySeconds = 30; //支付回调收到多久后仍未处理，由定时任务重新处理，单位秒
+    private int notifyMaxAttempts = 10; //支付回调的最大处理次数
+
+    private long refundInterval = 2000; //退款发件箱的处理间隔，单位毫秒
+    private int refundBatchSize = 50; //每批处理的退款数量
+    private int refundConcurrency = 4; //同时调用退款接口的数量
+    private int refundMaxAttempts = 8; //调用退款接口的最大次数，超出后标记为退款失败
+    private long refundBackoffSeconds = 10; //首次重试的等待时间，之后每次翻倍，单位秒
+    private long refundMaxBackoffSeconds = 1800; //重试等待时间的上限，单位秒
+
+    private String billDir; //交易账单目录，文件名为yyyy-MM-dd.csv，未配置时不对账
+    private int reconcileChunkSize = 200000; //账单外部排序时每块的记录数
+    private int reconcileBatchSize = 500; //每批写入的对账差异数量
+
+}
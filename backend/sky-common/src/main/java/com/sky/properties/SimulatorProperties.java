@@ -0,0 +1,19 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.simulator")
+@Data
+public class SimulatorProperties {
+
+    private long latencyMillis = 50; //模拟接口的响应延迟，单位毫秒
+    private long latencyJitterMillis = 0; //响应延迟的随机波动范围，单位毫秒
+    private double failureRate = 0; //模拟接口返回系统错误的概率，0到1之间
+    private long notifyDelayMillis = 500; //下单后多久发送支付成功回调，单位毫秒
+    private double duplicateNotifyRate = 0; //重复发送支付成功回调的概率，0到1之间
+    private int notifyThreads = 4; //发送回调的线程数
+
+}
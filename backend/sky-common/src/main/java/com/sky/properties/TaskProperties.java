@@ -0,0 +1,19 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.task")
+@Data
+public class TaskProperties {
+
+    private int chunkSize = 500; //定时任务每批处理的数据量
+
+    private boolean lockEnabled = true; //多实例部署时是否通过redis租约保证同一任务只由一个实例执行
+    private long leaseSeconds = 30; //任务租约时长，执行期间自动续期，单位秒
+    private boolean shard = false; //是否按订单id在存活实例间分片执行任务
+    private long nodeTtlSeconds = 30; //实例心跳超时时间，超时未上报的实例不参与分片，单位秒
+
+}
@@ -19,5 +19,11 @@ public class WeChatProperties {
     private String weChatPayCertFilePath; //平台证书
     private String notifyUrl; //支付成功的回调地址
     private String refundNotifyUrl; //退款成功的回调地址
+    private String loginUrl = "https://api.weixin.qq.com/sns/jscode2session"; //微信登录接口地址
+    private String payBaseUrl = "https://api.mch.weixin.qq.com"; //微信支付接口地址
+    private boolean validateResponse = true; //是否使用平台证书校验微信支付的响应签名，仅对接模拟器时关闭
+    private int maxConnections = 20; //调用微信支付接口的最大连接数
+    private int connectTimeout = 5000; //连接超时时间，单位毫秒
+    private int readTimeout = 10000; //读取超时时间，单位毫秒
 
 }
@@ -0,0 +1,19 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    private int maxQueueDepth = 256; //每个会话待发送消息的最大数量，超出时断开该会话
+    private int dispatcherQueueCapacity = 1024; //待分发广播消息的最大数量
+    private int replaySize = 1000; //保留最近广播消息的数量，客户端重连后可补发
+    private long coalesceMillis = 200; //合并发送窗口，开启合并的客户端在窗口内的消息合并为一帧发送，单位毫秒
+    private long heartbeatMillis = 30000; //向客户端发送ping的间隔，单位毫秒
+    private long idleTimeoutMillis = 90000; //超过该时间未收到客户端的pong或消息则断开会话，单位毫秒
+
+}
@@ -0,0 +1,230 @@
+package com.sky.utils;
+
+import com.sky.properties.WeChatProperties;
+import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
+import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微信支付客户端
+ * 商户私钥和平台证书只在首次使用时加载，签名的HttpClient长期复用并使用连接池；
+ * 定时检查密钥文件的修改时间，证书轮换后重新加载，加载失败时继续使用原有的密钥
+ */
+@Component
+@Slf4j
+public class WeChatPayClient {
+
+    @Autowired
+    private WeChatProperties weChatProperties;
+
+    //所有客户端共用的连接池，重新加载密钥时不关闭
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private volatile Credentials credentials;
+
+    //每个线程复用自己的Signature实例，密钥变化时重新初始化
+    private final ThreadLocal<SignatureHolder> signatures = new ThreadLocal<>();
+
+    @PostConstruct
+    public void init() {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(weChatProperties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(weChatProperties.getMaxConnections());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Credentials current = credentials;
+        if (current != null) {
+            closeQuietly(current.httpClient);
+        }
+        connectionManager.close();
+    }
+
+    /**
+     * 发送请求，返回响应体
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    public String execute(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = credentials().httpClient.execute(request)) {
+            return EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 使用商户私钥进行SHA256withRSA签名
+     * @param message
+     * @return Base64编码的签名
+     * @throws GeneralSecurityException
+     */
+    public String sign(byte[] message) throws GeneralSecurityException {
+        PrivateKey privateKey = credentials().privateKey;
+        SignatureHolder holder = signatures.get();
+        if (holder == null) {
+            holder = new SignatureHolder(Signature.getInstance("SHA256withRSA"));
+            signatures.set(holder);
+        }
+        if (holder.privateKey != privateKey) {
+            holder.signature.initSign(privateKey);
+            holder.privateKey = privateKey;
+        }
+        holder.signature.update(message);
+        return Base64.getEncoder().encodeToString(holder.signature.sign());
+    }
+
+    /**
+     * 定时检查密钥文件，有变化时重新加载
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void reloadIfChanged() {
+        Credentials current = credentials;
+        if (current == null) {
+            return;
+        }
+        if (lastModified(weChatProperties.getPrivateKeyFilePath()) != current.privateKeyModified
+                || lastModified(weChatProperties.getWeChatPayCertFilePath()) != current.certificateModified) {
+            reload();
+        }
+    }
+
+    /**
+     * 重新加载商户私钥和平台证书，加载失败时保留原有的密钥
+     */
+    public synchronized void reload() {
+        Credentials old = credentials;
+        try {
+            credentials = load();
+            log.info("微信支付密钥加载完成");
+        } catch (Exception e) {
+            log.error("微信支付密钥加载失败：{}", e.getMessage());
+            if (old == null) {
+                throw new IllegalStateException("微信支付密钥加载失败", e);
+            }
+            return;
+        }
+        if (old != null) {
+            //连接池是共享的，关闭旧客户端不影响进行中的请求
+            closeQuietly(old.httpClient);
+        }
+    }
+
+    private Credentials credentials() {
+        Credentials current = credentials;
+        if (current == null) {
+            synchronized (this) {
+                if (credentials == null) {
+                    reload();
+                }
+                current = credentials;
+            }
+        }
+        return current;
+    }
+
+    private Credentials load() throws IOException {
+        String privateKeyPath = weChatProperties.getPrivateKeyFilePath();
+        String certificatePath = weChatProperties.getWeChatPayCertFilePath();
+        long privateKeyModified = lastModified(privateKeyPath);
+        long certificateModified = lastModified(certificatePath);
+
+        PrivateKey privateKey;
+        try (InputStream in = new FileInputStream(new File(privateKeyPath))) {
+            privateKey = PemUtil.loadPrivateKey(in);
+        }
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(weChatProperties.getConnectTimeout())
+                .setSocketTimeout(weChatProperties.getReadTimeout())
+                .setConnectionRequestTimeout(weChatProperties.getConnectTimeout())
+                .build();
+        // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+        WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), privateKey);
+        if (weChatProperties.isValidateResponse()) {
+            X509Certificate certificate;
+            try (InputStream in = new FileInputStream(new File(certificatePath))) {
+                certificate = PemUtil.loadCertificate(in);
+            }
+            builder.withWechatPay(Collections.singletonList(certificate));
+        } else {
+            //对接模拟器时没有平台证书，不校验响应签名
+            builder.withValidator(response -> true);
+        }
+        CloseableHttpClient httpClient = builder
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        connectionManager.closeIdleConnections(60, TimeUnit.SECONDS);
+
+        return new Credentials(privateKey, httpClient, privateKeyModified, certificateModified);
+    }
+
+    private static long lastModified(String path) {
+        return path == null ? 0 : new File(path).lastModified();
+    }
+
+    private static void closeQuietly(CloseableHttpClient httpClient) {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("关闭微信支付客户端失败：{}", e.getMessage());
+        }
+    }
+
+    private static class Credentials {
+
+        private final PrivateKey privateKey;
+
+        private final CloseableHttpClient httpClient;
+
+        //加载时密钥文件的修改时间
+        private final long privateKeyModified;
+
+        private final long certificateModified;
+
+        Credentials(PrivateKey privateKey, CloseableHttpClient httpClient, long privateKeyModified, long certificateModified) {
+            this.privateKey = privateKey;
+            this.httpClient = httpClient;
+            this.privateKeyModified = privateKeyModified;
+            this.certificateModified = certificateModified;
+        }
+    }
+
+    private static class SignatureHolder {
+
+        private final Signature signature;
+
+        private PrivateKey privateKey;
+
+        SignatureHolder(Signature signature) {
+            this.signature = signature;
+        }
+    }
+}
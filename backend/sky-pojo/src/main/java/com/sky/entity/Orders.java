@@ -107,4 +107,13 @@ public class Orders implements Serializable {
 
     //餐具数量状态  1按餐量提供  0选择具体数量
     private Integer tablewareStatus;
+
+    //订单菜品摘要
+    private String orderDishes;
+
+    //商品份数
+    private Integer itemCount;
+
+    //第一个商品的图片
+    private String firstImage;
 }
@@ -0,0 +1,50 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 支付回调收件箱
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayNotify implements Serializable {
+
+    /**
+     * 处理状态 0待处理 1已处理
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer PROCESSED = 1;
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //微信支付交易号
+    private String transactionId;
+
+    //商户订单号
+    private String outTradeNo;
+
+    //微信支付的支付完成时间，与交易账单的交易时间一致
+    private LocalDateTime successTime;
+
+    //处理状态
+    private Integer status;
+
+    //处理失败次数
+    private Integer attempts;
+
+    //收到回调的时间
+    private LocalDateTime createTime;
+
+    //处理完成的时间
+    private LocalDateTime processTime;
+}
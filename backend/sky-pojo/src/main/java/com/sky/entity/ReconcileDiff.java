@@ -0,0 +1,55 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 对账差异
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconcileDiff implements Serializable {
+
+    /**
+     * 差异类型 1账单有订单无 2订单有账单无 3金额不一致
+     */
+    public static final Integer MISSING_ORDER = 1;
+    public static final Integer MISSING_BILL = 2;
+    public static final Integer AMOUNT_MISMATCH = 3;
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //账单日期
+    private LocalDate billDate;
+
+    //差异类型
+    private Integer type;
+
+    //商户订单号
+    private String outTradeNo;
+
+    //微信支付交易号
+    private String transactionId;
+
+    //订单id
+    private Long orderId;
+
+    //订单金额
+    private BigDecimal orderAmount;
+
+    //账单金额
+    private BigDecimal billAmount;
+
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,66 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 退款发件箱
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Refund implements Serializable {
+
+    /**
+     * 退款状态 0待退款 1已退款 2退款失败 3微信已受理、待查询退款结果
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer REFUNDED = 1;
+    public static final Integer FAILED = 2;
+    public static final Integer PROCESSING = 3;
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //订单id
+    private Long orderId;
+
+    //商户订单号
+    private String outTradeNo;
+
+    //商户退款单号
+    private String outRefundNo;
+
+    //退款金额
+    private BigDecimal refundAmount;
+
+    //原订单金额
+    private BigDecimal totalAmount;
+
+    //退款状态
+    private Integer status;
+
+    //调用退款接口失败的次数
+    private Integer attempts;
+
+    //下次调用退款接口的时间
+    private LocalDateTime nextRetryTime;
+
+    //微信支付退款单号
+    private String refundId;
+
+    //最近一次失败的原因
+    private String message;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+}
@@ -13,9 +13,6 @@ import java.util.List;
 @AllArgsConstructor
 public class OrderVO extends Orders implements Serializable {
 
-    //订单菜品信息
-    private String orderDishes;
-
     //订单详情
     private List<OrderDetail> orderDetailList;
 
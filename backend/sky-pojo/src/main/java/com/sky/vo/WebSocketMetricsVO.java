@@ -0,0 +1,38 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * WebSocket连接指标
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketMetricsVO implements Serializable {
+    //当前连接数
+    private Integer activeSessions;
+
+    //已发送消息数
+    private Long sentMessages;
+
+    //平均发送耗时，单位毫秒
+    private Double avgSendMillis;
+
+    //上次统计以来的最大发送耗时，单位毫秒
+    private Long maxSendMillis;
+
+    //丢弃的消息数
+    private Long droppedMessages;
+
+    //因空闲超时断开的连接数
+    private Long reapedSessions;
+
+    //发生错误的连接数
+    private Long errorSessions;
+}
@@ -0,0 +1,20 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，用于表示某个定时任务在多实例部署时需要协调执行
+ * 默认同一时刻只有抢到租约的实例执行；sharded为true且开启分片时，每个存活实例执行其中一个分片
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DistributedJob {
+    //任务名称，默认使用方法名
+    String value() default "";
+
+    //任务是否支持按id分片
+    boolean sharded() default false;
+}
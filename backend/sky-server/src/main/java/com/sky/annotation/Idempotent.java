@@ -0,0 +1,17 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，用于表示某个接口需要进行幂等处理
+ * 同一用户携带相同幂等键（请求头Idempotency-Key，未携带时取请求参数摘要）的重复请求，直接返回首次请求的结果
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Idempotent {
+    //首次请求结果的保留时间，单位秒
+    long expire() default 60;
+}
@@ -0,0 +1,59 @@
+package com.sky.aspect;
+
+import com.sky.annotation.DistributedJob;
+import com.sky.properties.TaskProperties;
+import com.sky.task.JobContext;
+import com.sky.task.JobCoordinator;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 自定义切面，实现多实例定时任务的协调执行
+ * 抢到租约的实例执行任务，其余实例跳过本次执行
+ */
+@Aspect
+@Component
+@Slf4j
+public class DistributedJobAspect {
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    @Autowired
+    private TaskProperties taskProperties;
+
+    /**
+     * 环绕通知，在通知中抢占、续期、释放租约
+     */
+    @Around("@annotation(distributedJob)")
+    public Object distributedJob(ProceedingJoinPoint joinPoint, DistributedJob distributedJob) throws Throwable {
+        if (!taskProperties.isLockEnabled()) {
+            return joinPoint.proceed();
+        }
+        String jobName = distributedJob.value().isEmpty() ? joinPoint.getSignature().getName() : distributedJob.value();
+
+        JobContext context = jobCoordinator.tryAcquire(jobName, distributedJob.sharded());
+        if (context == null) {
+            log.info("任务{}由其他实例执行，本实例跳过", jobName);
+            return null;
+        }
+
+        ScheduledFuture<?> renewal = jobCoordinator.scheduleRenewal(context);
+        JobContext.set(context);
+        try {
+            log.info("任务{}开始执行，令牌：{}，分片：{}/{}", jobName, context.getFencingToken(),
+                    context.getShardIndex(), context.getShardCount());
+            return joinPoint.proceed();
+        } finally {
+            JobContext.remove();
+            renewal.cancel(false);
+            jobCoordinator.release(context);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sky.aspect;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.annotation.Idempotent;
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
+import com.sky.exception.RepeatSubmitException;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自定义切面，实现接口幂等处理逻辑
+ * 首次请求通过SETNX抢占幂等键并执行，执行成功后把结果写入该键；重复请求命中结果直接返回，仍在执行中则拒绝
+ */
+@Aspect
+@Component
+@Slf4j
+public class IdempotentAspect {
+
+    private static final String KEY_PREFIX = "idempotent:";
+    private static final String HEADER_NAME = "Idempotency-Key";
+    //执行中标记
+    private static final String PROCESSING = "PROCESSING";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    /**
+     * 环绕通知，在通知中进行幂等校验
+     */
+    @Around("@annotation(idempotent)")
+    public Object idempotent(ProceedingJoinPoint joinPoint, Idempotent idempotent) throws Throwable {
+        String key = buildKey(joinPoint);
+
+        //抢占幂等键
+        Boolean first = redisTemplate.opsForValue().setIfAbsent(key, PROCESSING, idempotent.expire(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(first)) {
+            Object result = redisTemplate.opsForValue().get(key);
+            if (result != null && !PROCESSING.equals(result)) {
+                log.info("重复请求，返回首次请求结果：{}", key);
+                return result;
+            }
+            throw new RepeatSubmitException(MessageConstant.REPEAT_SUBMIT);
+        }
+
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            //执行失败，释放幂等键，允许客户端重试
+            redisTemplate.delete(key);
+            throw e;
+        }
+        if (result != null) {
+            redisTemplate.opsForValue().set(key, result, idempotent.expire(), TimeUnit.SECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * 幂等键：接口 + 用户id + 客户端幂等键，客户端未携带时使用请求参数的摘要
+     */
+    private String buildKey(ProceedingJoinPoint joinPoint) {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        String method = signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+
+        String token = null;
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            token = attributes.getRequest().getHeader(HEADER_NAME);
+        }
+        if (!StringUtils.hasText(token)) {
+            token = DigestUtils.md5DigestAsHex(JSON.toJSONString(joinPoint.getArgs()).getBytes(StandardCharsets.UTF_8));
+        }
+        return KEY_PREFIX + method + ":" + BaseContext.getCurrentId() + ":" + token;
+    }
+}
@@ -0,0 +1,11 @@
+package com.sky.bloom;
+
+/**
+ * 布隆过滤器覆盖的id类型
+ */
+public enum BloomType {
+    CATEGORY,
+    DISH,
+    SETMEAL,
+    ORDER
+}
@@ -0,0 +1,229 @@
+package com.sky.bloom;
+
+import com.sky.constant.StatusConstant;
+import com.sky.event.MenuChangeEvent;
+import com.sky.mapper.CategoryMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.BloomFilterProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 分类、菜品、套餐、订单id的布隆过滤器，用于拦截不存在的id，避免缓存穿透
+ * 启动时和每天定时从数据库全量重建，新增数据时通过redis频道同步到所有节点；
+ * 频道断线重新订阅后期间的新增消息已丢失，此时全量重建。
+ */
+@Component("idBloomFilters")
+@Slf4j
+public class IdBloomFilters implements MessageListener, SubscriptionListener {
+
+    //新增id的同步频道，消息格式：类型:id
+    public static final String CHANNEL = "sky:bloom:put";
+
+    @Autowired
+    private BloomFilterProperties bloomFilterProperties;
+
+    @Autowired
+    private CategoryMapper categoryMapper;
+
+    @Autowired
+    private DishMapper dishMapper;
+
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    //当前生效的过滤器，未重建完成前为空，此时不做拦截
+    private final Map<BloomType, BloomFilter> filters = new ConcurrentHashMap<>();
+
+    //重建中的过滤器，重建期间新增的id同时写入，防止替换后丢失
+    private final Map<BloomType, BloomFilter> rebuilding = new ConcurrentHashMap<>();
+
+    //是否已订阅过同步频道，之后的订阅均为断线后的重新订阅
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 判断id是否可能存在，返回false时一定不存在
+     * @param type
+     * @param id
+     * @return
+     */
+    public boolean mightContain(BloomType type, Long id) {
+        if (id == null) {
+            return false;
+        }
+        if (!bloomFilterProperties.isEnabled()) {
+            return true;
+        }
+        BloomFilter filter = filters.get(type);
+        return filter == null || filter.mightContain(id);
+    }
+
+    /**
+     * 添加id，并通知其他节点
+     * @param type
+     * @param id
+     */
+    public void put(BloomType type, Long id) {
+        if (id == null) {
+            return;
+        }
+        putLocal(type, id);
+        stringRedisTemplate.convertAndSend(CHANNEL, type.name() + ":" + id);
+    }
+
+    /**
+     * 菜单变更提交后，把涉及的菜品、套餐id加入过滤器，已删除的id在下次重建时移除
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMenuChange(MenuChangeEvent event) {
+        event.getDishIds().forEach(id -> put(BloomType.DISH, id));
+        event.getSetmealIds().forEach(id -> put(BloomType.SETMEAL, id));
+    }
+
+    /**
+     * 其他节点新增的id
+     * @param message
+     * @param pattern
+     */
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        if (index < 0) {
+            return;
+        }
+        try {
+            putLocal(BloomType.valueOf(body.substring(0, index)), Long.valueOf(body.substring(index + 1)));
+        } catch (IllegalArgumentException e) {
+            log.warn("无法解析的布隆过滤器消息：{}", body);
+        }
+    }
+
+    /**
+     * 断线后重新订阅时全量重建，补回断线期间漏收的id
+     * @param channel
+     * @param count
+     */
+    public void onChannelSubscribed(byte[] channel, long count) {
+        if (!subscribed.compareAndSet(false, true)) {
+            log.info("布隆过滤器同步频道重新订阅，全量重建");
+            CompletableFuture.runAsync(this::rebuildAll);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        rebuildAll();
+    }
+
+    /**
+     * 每天凌晨重建，清除已删除、已停用的id
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void rebuildAll() {
+        if (!bloomFilterProperties.isEnabled()) {
+            return;
+        }
+        for (BloomType type : BloomType.values()) {
+            try {
+                rebuild(type);
+            } catch (Exception e) {
+                log.error("重建布隆过滤器失败：{}", type, e);
+            }
+        }
+    }
+
+    /**
+     * 从数据库全量扫描id重建指定过滤器，重建完成后原子替换
+     * @param type
+     */
+    public void rebuild(BloomType type) {
+        long expected = type == BloomType.ORDER
+                ? bloomFilterProperties.getOrderExpectedInsertions()
+                : bloomFilterProperties.getMenuExpectedInsertions();
+        BloomFilter filter = new BloomFilter(expected, bloomFilterProperties.getFpp());
+        rebuilding.put(type, filter);
+
+        if (type == BloomType.CATEGORY) {
+            //只有启用的分类才能被用户端查询
+            categoryMapper.listIdsByStatus(StatusConstant.ENABLE).forEach(filter::put);
+        } else {
+            int batchSize = bloomFilterProperties.getScanBatchSize();
+            long lastId = 0;
+            List<Long> ids;
+            do {
+                ids = scanIds(type, lastId, batchSize);
+                for (Long id : ids) {
+                    filter.put(id);
+                    lastId = id;
+                }
+            } while (ids.size() == batchSize);
+        }
+
+        //先替换再移除，保证并发写入的id至少落入新过滤器
+        filters.put(type, filter);
+        rebuilding.remove(type);
+        log.info("布隆过滤器重建完成：{}，元素数量：{}，位数：{}，哈希次数：{}，配置误判率：{}，当前估算误判率：{}",
+                type, filter.getInsertions(), filter.getBitSize(), filter.getHashCount(),
+                bloomFilterProperties.getFpp(), String.format("%.6f", filter.expectedFpp()));
+    }
+
+    private void putLocal(BloomType type, Long id) {
+        BloomFilter pending = rebuilding.get(type);
+        if (pending != null) {
+            pending.put(id);
+        }
+        BloomFilter filter = filters.get(type);
+        if (filter != null && filter != pending) {
+            filter.put(id);
+        }
+    }
+
+    private List<Long> scanIds(BloomType type, long lastId, int batchSize) {
+        switch (type) {
+            case DISH:
+                return dishMapper.listIdsAfter(lastId, batchSize);
+            case SETMEAL:
+                return setmealMapper.listIdsAfter(lastId, batchSize);
+            case ORDER:
+                return orderMapper.listIdsAfter(lastId, batchSize);
+            default:
+                throw new IllegalArgumentException(type.name());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.sky.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 菜单缓存清理，只清理受影响分类的缓存
+ * 由CatalogStore在各节点刷新内存菜单数据之后调用，避免仍持有旧菜单数据的节点把旧数据重新写回缓存
+ */
+@Component
+@Slf4j
+public class MenuCacheEvictor {
+
+    public static final String DISH_KEY_PREFIX = "dish_";
+    public static final String SETMEAL_CACHE_NAME = "setmealCache";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * 清理受影响分类的菜品、套餐缓存
+     * @param dishCategoryIds
+     * @param setmealCategoryIds
+     */
+    public void evict(Set<Long> dishCategoryIds, Set<Long> setmealCategoryIds) {
+        evictDish(dishCategoryIds);
+        evictSetmeal(setmealCategoryIds);
+    }
+
+    /**
+     * 清理全部菜品、套餐缓存，用于全量重新加载菜单数据之后
+     */
+    public void evictAll() {
+        Set keys = redisTemplate.keys(DISH_KEY_PREFIX + "*");
+        if (keys != null && !keys.isEmpty()) {
+            redisTemplate.delete(keys);
+        }
+        Cache cache = cacheManager.getCache(SETMEAL_CACHE_NAME);
+        if (cache != null) {
+            cache.clear();
+        }
+        log.info("清理全部菜品、套餐缓存");
+    }
+
+    /**
+     * 清理分类下的菜品缓存
+     * @param categoryIds
+     */
+    private void evictDish(Set<Long> categoryIds) {
+        if (categoryIds == null || categoryIds.isEmpty()) {
+            return;
+        }
+        List<String> keys = categoryIds.stream()
+                .map(categoryId -> DISH_KEY_PREFIX + categoryId)
+                .collect(Collectors.toList());
+        log.info("清理菜品缓存:{}", keys);
+        redisTemplate.delete(keys);
+    }
+
+    /**
+     * 清理分类下的套餐缓存
+     * @param categoryIds
+     */
+    private void evictSetmeal(Set<Long> categoryIds) {
+        if (categoryIds == null || categoryIds.isEmpty()) {
+            return;
+        }
+        Cache cache = cacheManager.getCache(SETMEAL_CACHE_NAME);
+        if (cache == null) {
+            return;
+        }
+        log.info("清理套餐缓存:{}", categoryIds);
+        categoryIds.forEach(cache::evict);
+    }
+}
@@ -0,0 +1,51 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车存储
+ */
+public interface CartStore {
+
+    /**
+     * 商品数量加一，不存在时新增
+     * @param userId
+     * @param item 商品信息，包含菜品或套餐id、口味、名称、图片、单价
+     */
+    void add(Long userId, ShoppingCart item);
+
+    /**
+     * 商品数量减一，减到0时删除
+     * @param userId
+     * @param item 菜品或套餐id、口味
+     */
+    void sub(Long userId, ShoppingCart item);
+
+    /**
+     * 查询用户购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 清空用户购物车
+     * @param userId
+     */
+    void clear(Long userId);
+
+    /**
+     * 批量清空多个用户的购物车
+     * @param userIds
+     */
+    void clearAll(List<Long> userIds);
+
+    /**
+     * 批量加入商品
+     * @param userId
+     * @param items
+     */
+    void addAll(Long userId, List<ShoppingCart> items);
+}
@@ -0,0 +1,62 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 基于数据库shopping_cart表的购物车存储
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "db", matchIfMissing = true)
+public class DbCartStore implements CartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    public void add(Long userId, ShoppingCart item) {
+        //依赖唯一键，商品已存在时数量+1，否则插入
+        item.setUserId(userId);
+        item.setNumber(1);
+        item.setCreateTime(LocalDateTime.now());
+        shoppingCartMapper.upsert(item);
+    }
+
+    public void sub(Long userId, ShoppingCart item) {
+        ShoppingCart query = ShoppingCart.builder()
+                .userId(userId)
+                .dishId(item.getDishId())
+                .setmealId(item.getSetmealId())
+                .dishFlavor(item.getDishFlavor())
+                .build();
+        //数量大于1时减一，否则删除该商品
+        if (shoppingCartMapper.decreaseNumber(query) == 0) {
+            shoppingCartMapper.deleteLast(query);
+        }
+    }
+
+    public List<ShoppingCart> list(Long userId) {
+        return shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
+    }
+
+    public void clear(Long userId) {
+        shoppingCartMapper.deleteByUserId(userId);
+    }
+
+    public void clearAll(List<Long> userIds) {
+        shoppingCartMapper.deleteByUserIds(userIds);
+    }
+
+    public void addAll(Long userId, List<ShoppingCart> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        items.forEach(item -> item.setUserId(userId));
+        shoppingCartMapper.insertBatch(items);
+    }
+}
@@ -0,0 +1,246 @@
+package com.sky.cart;
+
+import com.sky.catalog.CatalogSnapshot;
+import com.sky.catalog.CatalogStore;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis哈希的购物车存储
+ * 每个用户一个哈希 cart:{userId}，字段为 d:{dishId}:{口味} 或 s:{setmealId}，值为数量
+ * 名称、图片、单价在查询时从内存菜单数据中补全，开启回写时定时把有变动的购物车整体写回shopping_cart表
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "redis")
+@Slf4j
+public class RedisCartStore implements CartStore {
+
+    private static final String KEY_PREFIX = "cart:";
+    private static final String DIRTY_KEY = "cart:dirty";
+    //标记字段，表示该购物车已从数据库加载过，空购物车也保留该字段，避免重复加载
+    private static final String LOADED_FIELD = "_";
+
+    //数量减一，减到0时删除字段，字段不存在返回-1
+    private static final RedisScript<Long> SUB_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return -1 end " +
+            "local n = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+            "if n <= 0 then redis.call('hdel', KEYS[1], ARGV[1]) end " +
+            "return n", Long.class);
+
+    //购物车不存在时才写入从数据库加载的数据，ARGV依次为字段、数量
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+            "redis.call('hset', KEYS[1], unpack(ARGV)) " +
+            "return 1", Long.class);
+
+    //清空购物车并保留已加载标记，两步在同一脚本中执行，避免中间被并发的加载写入数据库中的旧购物车
+    private static final RedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1]) " +
+            "return redis.call('hset', KEYS[1], ARGV[1], '1')", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    @Autowired
+    private CatalogStore catalogStore;
+
+    @Autowired
+    private CartProperties cartProperties;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    public void add(Long userId, ShoppingCart item) {
+        String key = ensureLoaded(userId);
+        stringRedisTemplate.opsForHash().increment(key, field(item), 1);
+        touch(userId, key);
+    }
+
+    public void sub(Long userId, ShoppingCart item) {
+        String key = ensureLoaded(userId);
+        Long n = stringRedisTemplate.execute(SUB_SCRIPT, Collections.singletonList(key), field(item));
+        if (n != null && n >= 0) {
+            touch(userId, key);
+        }
+    }
+
+    public List<ShoppingCart> list(Long userId) {
+        String key = ensureLoaded(userId);
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        CatalogSnapshot snapshot = catalogStore.snapshot();
+        List<ShoppingCart> list = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            String field = (String) entry.getKey();
+            if (LOADED_FIELD.equals(field)) {
+                continue;
+            }
+            ShoppingCart cart = parse(userId, field, Integer.parseInt((String) entry.getValue()), snapshot);
+            if (cart != null) {
+                list.add(cart);
+            }
+        }
+        return list;
+    }
+
+    public void clear(Long userId) {
+        clearAll(Collections.singletonList(userId));
+    }
+
+    public void clearAll(List<Long> userIds) {
+        //在事务中（如下单）时，提交后再清空，避免回滚后购物车已丢失
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userIds.forEach(RedisCartStore.this::doClear);
+                }
+            });
+        } else {
+            userIds.forEach(this::doClear);
+        }
+    }
+
+    public void addAll(Long userId, List<ShoppingCart> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        String key = ensureLoaded(userId);
+        for (ShoppingCart item : items) {
+            stringRedisTemplate.opsForHash().increment(key, field(item), item.getNumber() == null ? 1 : item.getNumber());
+        }
+        touch(userId, key);
+    }
+
+    /**
+     * 定时将有变动的购物车回写到shopping_cart表
+     */
+    @Scheduled(fixedDelayString = "${sky.cart.flush-interval:5000}")
+    public void flush() {
+        if (!cartProperties.isWriteBehind()) {
+            return;
+        }
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, cartProperties.getFlushBatchSize());
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        for (String id : userIds) {
+            Long userId = Long.valueOf(id);
+            try {
+                List<ShoppingCart> list = list(userId);
+                LocalDateTime now = LocalDateTime.now();
+                list.forEach(cart -> cart.setCreateTime(now));
+                transactionTemplate.executeWithoutResult(status -> {
+                    shoppingCartMapper.deleteByUserId(userId);
+                    if (!list.isEmpty()) {
+                        shoppingCartMapper.insertBatch(list);
+                    }
+                });
+            } catch (Exception e) {
+                //回写失败，放回待回写集合，下次重试
+                log.error("购物车回写失败，userId:{}", userId, e);
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, id);
+            }
+        }
+        log.info("购物车回写完成，用户数：{}", userIds.size());
+    }
+
+    private void doClear(Long userId) {
+        String key = KEY_PREFIX + userId;
+        stringRedisTemplate.execute(CLEAR_SCRIPT, Collections.singletonList(key), LOADED_FIELD);
+        touch(userId, key);
+    }
+
+    /**
+     * redis中没有该用户的购物车时，从数据库加载
+     * @param userId
+     * @return
+     */
+    private String ensureLoaded(Long userId) {
+        String key = KEY_PREFIX + userId;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            return key;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(LOADED_FIELD);
+        args.add("1");
+        if (cartProperties.isWriteBehind()) {
+            for (ShoppingCart cart : shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build())) {
+                args.add(field(cart));
+                args.add(String.valueOf(cart.getNumber()));
+            }
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(key), args.toArray());
+        stringRedisTemplate.expire(key, cartProperties.getTtlDays(), TimeUnit.DAYS);
+        return key;
+    }
+
+    private void touch(Long userId, String key) {
+        stringRedisTemplate.expire(key, cartProperties.getTtlDays(), TimeUnit.DAYS);
+        if (cartProperties.isWriteBehind()) {
+            stringRedisTemplate.opsForSet().add(DIRTY_KEY, String.valueOf(userId));
+        }
+    }
+
+    private static String field(ShoppingCart item) {
+        if (item.getDishId() != null) {
+            return "d:" + item.getDishId() + ":" + (item.getDishFlavor() == null ? "" : item.getDishFlavor());
+        }
+        return "s:" + item.getSetmealId();
+    }
+
+    /**
+     * 解析哈希字段，并从内存菜单数据中补全名称、图片、单价，商品已不存在时返回null
+     */
+    private static ShoppingCart parse(Long userId, String field, int number, CatalogSnapshot snapshot) {
+        ShoppingCart cart = ShoppingCart.builder().userId(userId).number(number).build();
+        if (field.startsWith("d:")) {
+            int sep = field.indexOf(':', 2);
+            Long dishId = Long.valueOf(field.substring(2, sep));
+            String flavor = field.substring(sep + 1);
+            Dish dish = snapshot.getDish(dishId);
+            if (dish == null) {
+                return null;
+            }
+            cart.setDishId(dishId);
+            cart.setDishFlavor(flavor.isEmpty() ? null : flavor);
+            cart.setName(dish.getName());
+            cart.setImage(dish.getImage());
+            cart.setAmount(dish.getPrice());
+        } else {
+            Long setmealId = Long.valueOf(field.substring(2));
+            Setmeal setmeal = snapshot.getSetmeal(setmealId);
+            if (setmeal == null) {
+                return null;
+            }
+            cart.setSetmealId(setmealId);
+            cart.setName(setmeal.getName());
+            cart.setImage(setmeal.getImage());
+            cart.setAmount(setmeal.getPrice());
+        }
+        return cart;
+    }
+}
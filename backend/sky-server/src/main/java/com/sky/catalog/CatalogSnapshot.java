@@ -0,0 +1,124 @@
+package com.sky.catalog;
+
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.entity.Setmeal;
+import com.sky.entity.SetmealDish;
+import com.sky.vo.DishItemVO;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 菜单数据的不可变快照，创建后不再修改，变更时整体替换
+ * 返回的实体对象在快照间共享，调用方只能读取
+ */
+@Getter
+public class CatalogSnapshot {
+
+    //按创建时间倒序，与数据库查询的顺序一致
+    private static final Comparator<Dish> DISH_ORDER = Comparator.comparing(Dish::getCreateTime,
+            Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final long version;
+    private final LongMap<Category> categories;
+    private final LongMap<Dish> dishes;
+    private final LongMap<List<DishFlavor>> flavors;
+    private final LongMap<Setmeal> setmeals;
+    private final LongMap<List<SetmealDish>> setmealDishes;
+
+    //按分类索引，构建快照时计算
+    private final LongMap<List<Dish>> dishesByCategory;
+    private final LongMap<List<Setmeal>> setmealsByCategory;
+
+    public CatalogSnapshot(long version, LongMap<Category> categories, LongMap<Dish> dishes,
+                           LongMap<List<DishFlavor>> flavors, LongMap<Setmeal> setmeals,
+                           LongMap<List<SetmealDish>> setmealDishes) {
+        this.version = version;
+        this.categories = categories;
+        this.dishes = dishes;
+        this.flavors = flavors;
+        this.setmeals = setmeals;
+        this.setmealDishes = setmealDishes;
+
+        List<Dish> dishList = new ArrayList<>(dishes.values());
+        dishList.sort(DISH_ORDER);
+        this.dishesByCategory = groupBy(dishList, Dish::getCategoryId);
+        this.setmealsByCategory = groupBy(setmeals.values(), Setmeal::getCategoryId);
+    }
+
+    public Dish getDish(Long id) {
+        return id == null ? null : dishes.get(id);
+    }
+
+    public Setmeal getSetmeal(Long id) {
+        return id == null ? null : setmeals.get(id);
+    }
+
+    public Category getCategory(Long id) {
+        return id == null ? null : categories.get(id);
+    }
+
+    public List<DishFlavor> getFlavors(Long dishId) {
+        return orEmpty(dishId == null ? null : flavors.get(dishId));
+    }
+
+    public List<SetmealDish> getSetmealDishes(Long setmealId) {
+        return orEmpty(setmealId == null ? null : setmealDishes.get(setmealId));
+    }
+
+    public List<Dish> getDishesByCategory(Long categoryId) {
+        return orEmpty(categoryId == null ? null : dishesByCategory.get(categoryId));
+    }
+
+    public List<Setmeal> getSetmealsByCategory(Long categoryId) {
+        return orEmpty(categoryId == null ? null : setmealsByCategory.get(categoryId));
+    }
+
+    /**
+     * 套餐包含的菜品选项，与SetmealMapper.getDishItemBySetmealId结果一致
+     * @param setmealId
+     * @return
+     */
+    public List<DishItemVO> getDishItems(Long setmealId) {
+        List<SetmealDish> list = getSetmealDishes(setmealId);
+        List<DishItemVO> items = new ArrayList<>(list.size());
+        for (SetmealDish setmealDish : list) {
+            Dish dish = getDish(setmealDish.getDishId());
+            items.add(DishItemVO.builder()
+                    .name(setmealDish.getName())
+                    .copies(setmealDish.getCopies())
+                    .image(dish == null ? null : dish.getImage())
+                    .description(dish == null ? null : dish.getDescription())
+                    .build());
+        }
+        return items;
+    }
+
+    /**
+     * 按外键分组，组内保持输入顺序
+     */
+    static <T> LongMap<List<T>> groupBy(List<T> list, Function<T, Long> keyFunction) {
+        Map<Long, List<T>> groups = new HashMap<>();
+        for (T item : list) {
+            Long key = keyFunction.apply(item);
+            if (key != null) {
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+            }
+        }
+        LongMap.Builder<List<T>> builder = new LongMap.Builder<>();
+        groups.forEach((key, value) -> builder.put(key, Collections.unmodifiableList(value)));
+        return builder.build();
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+}
@@ -0,0 +1,255 @@
+package com.sky.catalog;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.cache.MenuCacheEvictor;
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.entity.Setmeal;
+import com.sky.entity.SetmealDish;
+import com.sky.event.MenuChangeEvent;
+import com.sky.mapper.CategoryMapper;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.mapper.SetmealMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 内存中的菜单数据（分类、菜品、口味、套餐、套餐菜品）
+ * 读取时不访问数据库；变更时按id增量重新加载，生成新快照后原子替换
+ * 版本号保存在redis中，变更通过redis频道广播给其他节点，发现版本缺失时全量重新加载
+ * 每个节点替换快照后再清理受影响分类的redis菜单缓存，保证清理发生在所有节点读到新数据之后
+ */
+@Component
+@Slf4j
+public class CatalogStore implements MessageListener {
+
+    public static final String CHANNEL = "sky:catalog:change";
+    public static final String VERSION_KEY = "catalog:version";
+
+    //当前节点标识，忽略自己发出的广播
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>();
+
+    @Autowired
+    private CategoryMapper categoryMapper;
+
+    @Autowired
+    private DishMapper dishMapper;
+
+    @Autowired
+    private DishFlavorMapper dishFlavorMapper;
+
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    @Autowired
+    private SetmealDishMapper setmealDishMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private MenuCacheEvictor menuCacheEvictor;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        reloadAll();
+    }
+
+    /**
+     * 获取当前快照，尚未加载时同步加载
+     * @return
+     */
+    public CatalogSnapshot snapshot() {
+        CatalogSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            synchronized (this) {
+                //并发的首次读取只加载一次
+                snapshot = current.get();
+                if (snapshot == null) {
+                    reloadAll();
+                    snapshot = current.get();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 全量加载
+     */
+    public synchronized void reloadAll() {
+        //先读版本再读数据，版本号之前的变更都已提交
+        long version = globalVersion();
+
+        LongMap<Category> categories = index(categoryMapper.listAll(), Category::getId);
+        LongMap<Dish> dishes = index(dishMapper.list(new Dish()), Dish::getId);
+        LongMap<List<DishFlavor>> flavors = CatalogSnapshot.groupBy(dishFlavorMapper.listAll(), DishFlavor::getDishId);
+        LongMap<Setmeal> setmeals = index(setmealMapper.list(new Setmeal()), Setmeal::getId);
+        LongMap<List<SetmealDish>> setmealDishes = CatalogSnapshot.groupBy(setmealDishMapper.listAll(), SetmealDish::getSetmealId);
+
+        current.set(new CatalogSnapshot(version, categories, dishes, flavors, setmeals, setmealDishes));
+        log.info("菜单数据全量加载完成，版本：{}，分类：{}，菜品：{}，套餐：{}",
+                version, categories.size(), dishes.size(), setmeals.size());
+    }
+
+    /**
+     * 本节点的菜单变更提交后，增量刷新并广播
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMenuChange(MenuChangeEvent event) {
+        Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        apply(event.getCategoryIds(), event.getDishIds(), event.getSetmealIds(), version == null ? 0 : version);
+        menuCacheEvictor.evict(event.getDishCategoryIds(), event.getSetmealCategoryIds());
+
+        JSONObject message = new JSONObject();
+        message.put("nodeId", nodeId);
+        message.put("version", version);
+        message.put("categoryIds", event.getCategoryIds());
+        message.put("dishIds", event.getDishIds());
+        message.put("setmealIds", event.getSetmealIds());
+        message.put("dishCategoryIds", event.getDishCategoryIds());
+        message.put("setmealCategoryIds", event.getSetmealCategoryIds());
+        stringRedisTemplate.convertAndSend(CHANNEL, message.toJSONString());
+    }
+
+    /**
+     * 其他节点的菜单变更
+     * @param message
+     * @param pattern
+     */
+    public void onMessage(Message message, byte[] pattern) {
+        JSONObject body = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (nodeId.equals(body.getString("nodeId"))) {
+            return;
+        }
+        apply(toIds(body, "categoryIds"), toIds(body, "dishIds"), toIds(body, "setmealIds"),
+                body.getLongValue("version"));
+        menuCacheEvictor.evict(toIds(body, "dishCategoryIds"), toIds(body, "setmealCategoryIds"));
+    }
+
+    /**
+     * 定时对比版本号，补偿丢失的广播
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void checkVersion() {
+        CatalogSnapshot snapshot = current.get();
+        if (snapshot != null && globalVersion() > snapshot.getVersion()) {
+            log.info("菜单数据版本落后，重新加载");
+            reloadAll();
+            //不知道错过了哪些分类的变更，清理全部菜单缓存
+            menuCacheEvictor.evictAll();
+        }
+    }
+
+    /**
+     * 按id重新加载变更的数据，生成新快照
+     */
+    private synchronized void apply(Collection<Long> categoryIds, Collection<Long> dishIds,
+                                    Collection<Long> setmealIds, long version) {
+        CatalogSnapshot old = current.get();
+        if (old == null || version > old.getVersion() + 1) {
+            //尚未加载，或中间有变更未收到
+            reloadAll();
+            if (old != null) {
+                menuCacheEvictor.evictAll();
+            }
+            return;
+        }
+
+        LongMap<Category> categories = old.getCategories();
+        if (!categoryIds.isEmpty()) {
+            categories = replace(categories, categoryIds, categoryMapper.getByIds(new ArrayList<>(categoryIds)), Category::getId);
+        }
+
+        LongMap<Dish> dishes = old.getDishes();
+        LongMap<List<DishFlavor>> flavors = old.getFlavors();
+        if (!dishIds.isEmpty()) {
+            List<Long> ids = new ArrayList<>(dishIds);
+            dishes = replace(dishes, ids, dishMapper.getByIds(ids), Dish::getId);
+            flavors = replaceGroups(flavors, ids, dishFlavorMapper.getByDishIds(ids), DishFlavor::getDishId);
+        }
+
+        LongMap<Setmeal> setmeals = old.getSetmeals();
+        LongMap<List<SetmealDish>> setmealDishes = old.getSetmealDishes();
+        if (!setmealIds.isEmpty()) {
+            List<Long> ids = new ArrayList<>(setmealIds);
+            setmeals = replace(setmeals, ids, setmealMapper.getByIds(ids), Setmeal::getId);
+            setmealDishes = replaceGroups(setmealDishes, ids, setmealDishMapper.getBySetmealIds(ids), SetmealDish::getSetmealId);
+        }
+
+        current.set(new CatalogSnapshot(Math.max(version, old.getVersion()),
+                categories, dishes, flavors, setmeals, setmealDishes));
+        log.info("菜单数据增量刷新，版本：{}，分类：{}，菜品：{}，套餐：{}", version, categoryIds, dishIds, setmealIds);
+    }
+
+    private long globalVersion() {
+        String version = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+        return version == null ? 0 : Long.parseLong(version);
+    }
+
+    private static <T> LongMap<T> index(List<T> list, Function<T, Long> idFunction) {
+        LongMap.Builder<T> builder = new LongMap.Builder<>();
+        list.forEach(item -> builder.put(idFunction.apply(item), item));
+        return builder.build();
+    }
+
+    /**
+     * 先移除变更的id，再放入重新查询到的数据，查询不到的视为已删除
+     */
+    private static <T> LongMap<T> replace(LongMap<T> map, Collection<Long> ids, List<T> loaded, Function<T, Long> idFunction) {
+        LongMap.Builder<T> builder = map.toBuilder();
+        ids.forEach(builder::remove);
+        loaded.forEach(item -> builder.put(idFunction.apply(item), item));
+        return builder.build();
+    }
+
+    private static <T> LongMap<List<T>> replaceGroups(LongMap<List<T>> map, Collection<Long> ids, List<T> loaded,
+                                                      Function<T, Long> keyFunction) {
+        LongMap.Builder<List<T>> builder = map.toBuilder();
+        ids.forEach(builder::remove);
+        CatalogSnapshot.groupBy(loaded, keyFunction).forEach(builder::put);
+        return builder.build();
+    }
+
+    private static Set<Long> toIds(JSONObject body, String key) {
+        List<Long> ids = body.getJSONArray(key) == null ? null : body.getJSONArray(key).toJavaList(Long.class);
+        return ids == null ? Collections.emptySet() : new HashSet<>(ids);
+    }
+}
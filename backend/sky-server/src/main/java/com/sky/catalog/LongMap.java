@@ -0,0 +1,205 @@
+package com.sky.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 以long为键的不可变哈希表，开放寻址，查询时不装箱
+ * @param <V>
+ */
+public final class LongMap<V> {
+
+    private static final LongMap<?> EMPTY = new Builder<>().build();
+
+    private final long[] keys;
+    private final Object[] values;
+    private final int size;
+    private final int mask;
+
+    private LongMap(long[] keys, Object[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.mask = keys.length - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> LongMap<V> empty() {
+        return (LongMap<V>) EMPTY;
+    }
+
+    /**
+     * 根据键查询，不存在时返回null
+     * @param key
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = index(key, mask);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 所有值，顺序不固定
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                list.add((V) value);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Long, V> action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * 以当前内容为基础创建构建器，用于写时复制
+     * @return
+     */
+    public Builder<V> toBuilder() {
+        Builder<V> builder = new Builder<>();
+        forEach(builder::put);
+        return builder;
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * 构建器，非线程安全
+     * @param <V>
+     */
+    public static final class Builder<V> {
+
+        private long[] keys = new long[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        /**
+         * 放入键值，value为null时表示删除
+         * @param key
+         * @param value
+         * @return
+         */
+        public Builder<V> put(long key, V value) {
+            if (value == null) {
+                return remove(key);
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return this;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return this;
+        }
+
+        public Builder<V> remove(long key) {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = null;
+                    size--;
+                    //重新放入后续同一探测链上的元素
+                    int j = (i + 1) & mask;
+                    while (values[j] != null) {
+                        long k = keys[j];
+                        Object v = values[j];
+                        values[j] = null;
+                        size--;
+                        reinsert(k, v);
+                        j = (j + 1) & mask;
+                    }
+                    return this;
+                }
+                i = (i + 1) & mask;
+            }
+            return this;
+        }
+
+        public LongMap<V> build() {
+            //按元素数量压缩容量，负载因子不超过0.5
+            int capacity = 16;
+            while (capacity < size * 2) {
+                capacity <<= 1;
+            }
+            long[] newKeys = new long[capacity];
+            Object[] newValues = new Object[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) {
+                    int j = index(keys[i], mask);
+                    while (newValues[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    newKeys[j] = keys[i];
+                    newValues[j] = values[i];
+                }
+            }
+            return new LongMap<>(newKeys, newValues, size);
+        }
+
+        private void reinsert(long key, Object value) {
+            int mask = keys.length - 1;
+            int i = index(key, mask);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    reinsert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
@@ -11,12 +11,10 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import javax.management.relation.RelationSupport;
 import java.util.List;
-import java.util.Set;
 
 /**
  * 菜品管理
@@ -30,18 +28,12 @@ public class DishController {
     @Autowired
     private DishService dishService;
 
-    @Autowired
-    private RedisTemplate redisTemplate;
-
     @PostMapping
     @ApiOperation("新增菜品")
     public Result add(@RequestBody DishDTO dishDTO){
         log.info("新增菜品:{}",dishDTO);
         dishService.addWithFlavors(dishDTO);
 
-        //将所有菜品缓存清理掉，删除dish_开头的key
-        String key="dish_"+dishDTO.getCategoryId();
-        cleanCache(key);
         return Result.success();
     }
 
@@ -59,8 +51,6 @@ public class DishController {
         log.info("菜品批量删除:{}",ids);
         dishService.deleteBatch(ids);
 
-        //将所有菜品缓存清理掉，删除dish_开头的key
-        cleanCache("dish_*");
         return Result.success();
     }
 
@@ -78,8 +68,6 @@ public class DishController {
         log.info("修改菜品:{}",dishDTO);
         dishService.updateWithFlavor(dishDTO);
 
-        //将所有菜品缓存清理掉，删除dish_开头的key
-        cleanCache("dish_*");
         return Result.success();
     }
 
@@ -89,8 +77,6 @@ public class DishController {
         log.info("起售停售菜品,{},{}",status,id);
         dishService.startOrStop(status,id);
 
-        //将所有菜品缓存清理掉，删除dish_开头的key
-        cleanCache("dish_*");
         return Result.success();
     }
 
@@ -101,12 +87,4 @@ public class DishController {
         List<Dish>dishes=dishService.list(categoryId);
         return Result.success(dishes);
     }
-
-    /**
-     * 清理缓存数据
-     */
-    private void cleanCache(String pattern){
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-    }
 }
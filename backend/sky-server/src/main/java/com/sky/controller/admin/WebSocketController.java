@@ -0,0 +1,35 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.vo.WebSocketMetricsVO;
+import com.sky.websocket.WebSocketMetrics;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * WebSocket连接管理
+ */
+@RestController
+@RequestMapping("/admin/websocket")
+@Slf4j
+@Api(tags = "WebSocket连接相关接口")
+public class WebSocketController {
+
+    @Autowired
+    private WebSocketMetrics webSocketMetrics;
+
+    /**
+     * 查询本实例的WebSocket连接指标
+     * @return
+     */
+    @GetMapping("/metrics")
+    @ApiOperation("查询WebSocket连接指标")
+    public Result<WebSocketMetricsVO> metrics() {
+        return Result.success(webSocketMetrics.snapshot());
+    }
+}
@@ -3,18 +3,23 @@ package com.sky.controller.notify;
 import com.alibaba.druid.support.json.JSONUtils;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.PayNotify;
+import com.sky.mapper.PayNotifyMapper;
+import com.sky.pay.PayNotifyProcessor;
 import com.sky.properties.WeChatProperties;
-import com.sky.service.OrderService;
 import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.entity.ContentType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
 
 /**
@@ -25,19 +30,22 @@ import java.util.HashMap;
 @Slf4j
 public class PayNotifyController {
     @Autowired
-    private OrderService orderService;
+    private PayNotifyMapper payNotifyMapper;
+    @Autowired
+    private PayNotifyProcessor payNotifyProcessor;
     @Autowired
     private WeChatProperties weChatProperties;
 
     /**
      * 支付成功回调
+     * 解密成功即说明回调来自微信支付，按交易号去重写入收件箱后立即应答，订单状态由PayNotifyProcessor异步修改
      *
      * @param request
      */
     @RequestMapping("/paySuccess")
     public void paySuccessNotify(HttpServletRequest request, HttpServletResponse response) throws Exception {
         //读取数据
-        String body = readData(request);
+        String body = StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
         log.info("支付成功回调：{}", body);
 
         //数据解密
@@ -47,37 +55,30 @@ public class PayNotifyController {
         JSONObject jsonObject = JSON.parseObject(plainText);
         String outTradeNo = jsonObject.getString("out_trade_no");//商户平台订单号
         String transactionId = jsonObject.getString("transaction_id");//微信支付交易号
+        String successTime = jsonObject.getString("success_time");//支付完成时间，rfc3339格式
 
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        //业务处理，修改订单状态、来单提醒
-        orderService.paySuccess(outTradeNo);
+        //写入收件箱，重复的回调不再处理
+        PayNotify payNotify = PayNotify.builder()
+                .transactionId(transactionId)
+                .outTradeNo(outTradeNo)
+                .successTime(successTime == null ? null : OffsetDateTime.parse(successTime)
+                        .atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime())
+                .status(PayNotify.PENDING)
+                .createTime(LocalDateTime.now())
+                .build();
+        if (payNotifyMapper.insertIgnore(payNotify) > 0) {
+            payNotifyProcessor.submit(payNotify);
+        } else {
+            log.info("重复的支付回调，交易号：{}", transactionId);
+        }
 
         //给微信响应
         responseToWeixin(response);
     }
 
-    /**
-     * 读取数据
-     *
-     * @param request
-     * @return
-     * @throws Exception
-     */
-    private String readData(HttpServletRequest request) throws Exception {
-        BufferedReader reader = request.getReader();
-        StringBuilder result = new StringBuilder();
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-            if (result.length() > 0) {
-                result.append("\n");
-            }
-            result.append(line);
-        }
-        return result.toString();
-    }
-
     /**
      * 数据解密
      *
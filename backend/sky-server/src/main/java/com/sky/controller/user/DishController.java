@@ -1,5 +1,7 @@
 package com.sky.controller.user;
 
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
@@ -13,6 +15,8 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController("userDishController")
@@ -26,6 +30,9 @@ public class DishController {
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+
     /**
      * 根据分类id查询菜品
      *
@@ -35,6 +42,11 @@ public class DishController {
     @GetMapping("/list")
     @ApiOperation("根据分类id查询菜品")
     public Result<List<DishVO>> list(Long categoryId) {
+        //分类不存在或未启用，直接返回，不访问redis和数据库
+        if(!idBloomFilters.mightContain(BloomType.CATEGORY,categoryId)){
+            return Result.success(new ArrayList<>());
+        }
+
         //构建redis的key,规则dish_分类id
         String key="dish_"+categoryId;
 
@@ -57,4 +69,18 @@ public class DishController {
         return Result.success(list);
     }
 
+    /**
+     * 根据名称、描述或拼音首字母搜索菜品
+     *
+     * @param keyword
+     * @return
+     */
+    @GetMapping("/search")
+    @ApiOperation("搜索菜品")
+    public Result<List<DishVO>> search(String keyword) {
+        log.info("搜索菜品:{}",keyword);
+        List<DishVO> list = dishService.search(keyword);
+        return Result.success(list);
+    }
+
 }
@@ -1,10 +1,13 @@
 package com.sky.controller.user;
 
+import com.sky.annotation.Idempotent;
 import com.sky.dto.OrdersPaymentDTO;
 import com.sky.dto.OrdersSubmitDTO;
+import com.sky.properties.PayProperties;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
+import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 import io.swagger.annotations.Api;
@@ -23,7 +26,11 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private PayProperties payProperties;
+
     @PostMapping("/submit")
+    @Idempotent
     @ApiOperation("用户下单")
     public Result submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO){
         log.info("用户下单,订单信息为:{}",ordersSubmitDTO);
@@ -38,12 +45,15 @@ public class OrderController {
      * @return
      */
     @PutMapping("/payment")
+    @Idempotent
     @ApiOperation("订单支付")
     public Result payment(@RequestBody OrdersPaymentDTO ordersPaymentDTO) throws Exception {
         log.info("订单支付：{}", ordersPaymentDTO);
-//        OrderPaymentVO orderPaymentVO = orderService.payment(ordersPaymentDTO);
-//        log.info("生成预支付交易单：{}", orderPaymentVO);
-//        return Result.success(orderPaymentVO);
+        if (payProperties.isWechatPay()) {
+            OrderPaymentVO orderPaymentVO = orderService.payment(ordersPaymentDTO);
+            log.info("生成预支付交易单：{}", orderPaymentVO);
+            return Result.success(orderPaymentVO);
+        }
         orderService.paySuccess(ordersPaymentDTO.getOrderNumber());
         return Result.success();
     }
@@ -73,6 +83,7 @@ public class OrderController {
     }
 
     @PostMapping("/repetition/{id}")
+    @Idempotent(expire = 10)
     @ApiOperation("再来一单")
     public Result repetition(@PathVariable Long id){
         log.info("再来一单,订单号：{}",id);
@@ -1,5 +1,7 @@
 package com.sky.controller.user;
 
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Setmeal;
 import com.sky.result.Result;
@@ -14,6 +16,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController("userSetmealController")
@@ -23,6 +26,9 @@ public class SetmealController {
     @Autowired
     private SetmealService setmealService;
 
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+
     /**
      * 条件查询
      *
@@ -31,8 +37,14 @@ public class SetmealController {
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询套餐")
-    @Cacheable(cacheNames = "setmealCache",key = "#categoryId")//key:setmealCache::categoryId
+    @Cacheable(cacheNames = "setmealCache",key = "#categoryId",
+            unless = "#result.data.isEmpty()")//key:setmealCache::categoryId，空结果不缓存，避免不存在的分类id写入redis
     public Result<List<Setmeal>> list(Long categoryId) {
+        //分类不存在或未启用，直接返回，不访问数据库
+        if(!idBloomFilters.mightContain(BloomType.CATEGORY,categoryId)){
+            return Result.success(new ArrayList<>());
+        }
+
         Setmeal setmeal = new Setmeal();
         setmeal.setCategoryId(categoryId);
         setmeal.setStatus(StatusConstant.ENABLE);
@@ -0,0 +1,405 @@
+package com.sky.dashboard;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.order.OrderPricer;
+import com.sky.properties.DashboardProperties;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.OrderOverViewVO;
+import com.sky.vo.OrderStatisticsVO;
+import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketTopic;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 工作台运营数据计数器
+ * 今日订单和处理中订单的状态计数保存在redis哈希中，订单变更后按订单状态增量更新，工作台查询直接读取计数；
+ * 计数变化后定时将变化的数据通过websocket的stats主题推送，打开多少个工作台都只发布一条消息；
+ * 处理中订单的计数每天初始化时从数据库重新统计，修正漏收变更造成的偏差
+ */
+@Component
+@Slf4j
+public class DashboardStats {
+
+    private static final String DAY_PREFIX = "dashboard:day:";
+    private static final String ACTIVE_KEY = "dashboard:active";
+    //重新统计处理中订单时的临时哈希，统计期间的订单变更同时写入，统计完成后替换ACTIVE_KEY
+    private static final String ACTIVE_REBUILD_KEY = "dashboard:active:rebuild";
+    private static final String SEED_LOCK_PREFIX = "dashboard:seed:";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String SEEDED = "seeded";
+    private static final String TOTAL = "total";
+    private static final String TURNOVER = "turnover";
+    private static final String NEW_USERS = "newUsers";
+    private static final int APPLY_BATCH_SIZE = 500;
+
+    //处理中的订单状态范围：待接单、已接单、派送中
+    private static final int ACTIVE_LOW = Orders.TO_BE_CONFIRMED;
+    private static final int ACTIVE_HIGH = Orders.DELIVERY_IN_PROGRESS;
+
+    /**
+     * 按订单当前状态更新计数，KEYS[1]为当日哈希，KEYS[2]为处理中订单哈希，KEYS[3]存在时为重新统计中的处理中订单哈希
+     * ARGV[1]已完成状态，ARGV[2]、ARGV[3]处理中状态范围，之后每4个参数为一个订单：id、状态、金额（分）、是否当日订单
+     * 订单状态只会前进，只有新状态大于已记录的状态时才计数，重复或乱序到达的变更不会重复计数；
+     * 重新统计中的哈希记录所有变更的订单，避免统计期间离开处理中状态的订单被数据库中的旧状态重新计入
+     */
+    private static final RedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "local completed = tonumber(ARGV[1]) " +
+            "local lo = tonumber(ARGV[2]) " +
+            "local hi = tonumber(ARGV[3]) " +
+            "local rebuilding = KEYS[3] ~= nil and redis.call('exists', KEYS[3]) == 1 " +
+            "local function active(key, field, status, record) " +
+            "  local old = tonumber(redis.call('hget', key, field)) " +
+            "  local isActive = status >= lo and status <= hi " +
+            "  if (old == nil and (isActive or record)) or (old ~= nil and status > old) then " +
+            "    redis.call('hset', key, field, status) " +
+            "    if old ~= nil and old >= lo and old <= hi then redis.call('hincrby', key, 'c:' .. old, -1) end " +
+            "    if isActive then redis.call('hincrby', key, 'c:' .. status, 1) end " +
+            "  end " +
+            "end " +
+            "for i = 4, #ARGV, 4 do " +
+            "  local field = 'o:' .. ARGV[i] " +
+            "  local status = tonumber(ARGV[i + 1]) " +
+            "  if ARGV[i + 3] == '1' then " +
+            "    local old = tonumber(redis.call('hget', KEYS[1], field)) " +
+            "    if old == nil or status > old then " +
+            "      redis.call('hset', KEYS[1], field, status) " +
+            "      if old == nil then redis.call('hincrby', KEYS[1], 'total', 1) " +
+            "      else redis.call('hincrby', KEYS[1], 'c:' .. old, -1) end " +
+            "      redis.call('hincrby', KEYS[1], 'c:' .. status, 1) " +
+            "      if status == completed then redis.call('hincrby', KEYS[1], 'turnover', ARGV[i + 2]) " +
+            "      elseif old == completed then redis.call('hincrby', KEYS[1], 'turnover', -tonumber(ARGV[i + 2])) end " +
+            "    end " +
+            "  end " +
+            "  active(KEYS[2], field, status, false) " +
+            "  if rebuilding then active(KEYS[3], field, status, true) end " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    //按用户id去重累加新用户数，KEYS[1]为当日哈希，ARGV为用户id
+    private static final RedisScript<Long> NEW_USER_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 " +
+            "for i = 1, #ARGV do " +
+            "  if redis.call('hsetnx', KEYS[1], 'u:' .. ARGV[i], 1) == 1 then n = n + 1 end " +
+            "end " +
+            "if n > 0 then redis.call('hincrby', KEYS[1], 'newUsers', n) end " +
+            "return n",
+            Long.class);
+
+    //重新统计完成，用临时哈希替换处理中订单哈希
+    private static final RedisScript<Long> REPLACE_ACTIVE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('rename', KEYS[1], KEYS[2]) " +
+            "redis.call('persist', KEYS[2]) " +
+            "redis.call('hdel', KEYS[2], 'rebuilding') " +
+            "redis.call('hset', KEYS[2], 'seeded', '1') " +
+            "return 1",
+            Long.class);
+
+    //清理已离开处理中状态的订单，ARGV[1]、ARGV[2]为处理中状态范围
+    private static final RedisScript<Long> PRUNE_SCRIPT = new DefaultRedisScript<>(
+            "local all = redis.call('hgetall', KEYS[1]) " +
+            "local n = 0 " +
+            "for i = 1, #all, 2 do " +
+            "  if string.sub(all[i], 1, 2) == 'o:' then " +
+            "    local status = tonumber(all[i + 1]) " +
+            "    if status < tonumber(ARGV[1]) or status > tonumber(ARGV[2]) then " +
+            "      redis.call('hdel', KEYS[1], all[i]) n = n + 1 " +
+            "    end " +
+            "  end " +
+            "end " +
+            "return n",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    @Autowired
+    private DashboardProperties dashboardProperties;
+
+    //本实例已确认计数存在的日期
+    private volatile LocalDate seededDay;
+
+    //本实例更新过计数，等待推送
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    //本实例上次推送时的数据，推送时只发送有变化的字段
+    private Map<String, Object> lastPushed = new HashMap<>();
+    private LocalDate lastPushDay = LocalDate.now();
+
+    /**
+     * 订单新增或状态变更后更新计数
+     * @param ordersList 变更后的订单
+     */
+    public void onOrdersChanged(List<Orders> ordersList) {
+        if (!dashboardProperties.isLive() || ordersList.isEmpty()) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            prepare(today);
+            apply(today, ordersList);
+            dirty.set(true);
+        } catch (Exception e) {
+            log.warn("更新工作台计数失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 新用户注册后更新计数，按用户id去重，与初始化时的统计重叠也不会重复计数
+     * @param userId
+     */
+    public void onNewUser(Long userId) {
+        if (!dashboardProperties.isLive()) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            prepare(today);
+            stringRedisTemplate.execute(NEW_USER_SCRIPT, Arrays.asList(dayKey(today)), String.valueOf(userId));
+            dirty.set(true);
+        } catch (Exception e) {
+            log.warn("更新工作台计数失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 工作台数据是否由计数器提供
+     * @return
+     */
+    public boolean isLive() {
+        return dashboardProperties.isLive();
+    }
+
+    /**
+     * 是否由计数器提供该时间段的营业数据，只有今日数据有计数
+     * @param begin
+     * @param end
+     * @return
+     */
+    public boolean covers(LocalDateTime begin, LocalDateTime end) {
+        LocalDate today = LocalDate.now();
+        return isLive() && begin.equals(today.atStartOfDay()) && end.toLocalDate().equals(today);
+    }
+
+    /**
+     * 今日营业数据
+     * @return
+     */
+    public BusinessDataVO businessData() {
+        LocalDate today = LocalDate.now();
+        prepare(today);
+        List<Long> values = values(dayKey(today), TOTAL, "c:" + Orders.COMPLETED, TURNOVER, NEW_USERS);
+        long total = values.get(0);
+        long valid = values.get(1);
+        double turnover = values.get(2) / 100.0;
+
+        double orderCompletionRate = 0.0;
+        double unitPrice = 0.0;
+        if (total != 0 && valid != 0) {
+            orderCompletionRate = (double) valid / total;
+            unitPrice = turnover / valid;
+        }
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount((int) valid)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(values.get(3).intValue())
+                .build();
+    }
+
+    /**
+     * 今日订单管理数据
+     * @return
+     */
+    public OrderOverViewVO orderOverView() {
+        LocalDate today = LocalDate.now();
+        prepare(today);
+        List<Long> values = values(dayKey(today), "c:" + Orders.TO_BE_CONFIRMED, "c:" + Orders.CONFIRMED,
+                "c:" + Orders.COMPLETED, "c:" + Orders.CANCELLED, TOTAL);
+        return OrderOverViewVO.builder()
+                .waitingOrders(values.get(0).intValue())
+                .deliveredOrders(values.get(1).intValue())
+                .completedOrders(values.get(2).intValue())
+                .cancelledOrders(values.get(3).intValue())
+                .allOrders(values.get(4).intValue())
+                .build();
+    }
+
+    /**
+     * 各状态处理中订单数量
+     * @return
+     */
+    public OrderStatisticsVO orderStatistics() {
+        prepare(LocalDate.now());
+        List<Long> values = values(ACTIVE_KEY, "c:" + Orders.TO_BE_CONFIRMED, "c:" + Orders.CONFIRMED,
+                "c:" + Orders.DELIVERY_IN_PROGRESS);
+        OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
+        orderStatisticsVO.setToBeConfirmed(values.get(0).intValue());
+        orderStatisticsVO.setConfirmed(values.get(1).intValue());
+        orderStatisticsVO.setDeliveryInProgress(values.get(2).intValue());
+        return orderStatisticsVO;
+    }
+
+    /**
+     * 推送本实例更新过的数据，跨天时推送清零后的数据
+     * 消息格式：{"type":"stats","data":{"waitingOrders":3,...}}，data中只包含有变化的字段，字段名与工作台接口一致
+     */
+    @Scheduled(fixedDelayString = "${sky.dashboard.push-interval:1000}")
+    public void push() {
+        if (!dashboardProperties.isLive()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        if (!dirty.getAndSet(false) && today.equals(lastPushDay)) {
+            return;
+        }
+        lastPushDay = today;
+        try {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.putAll((JSONObject) JSONObject.toJSON(businessData()));
+            snapshot.putAll((JSONObject) JSONObject.toJSON(orderOverView()));
+            snapshot.putAll((JSONObject) JSONObject.toJSON(orderStatistics()));
+
+            Map<String, Object> changed = new LinkedHashMap<>();
+            snapshot.forEach((name, value) -> {
+                if (!Objects.equals(value, lastPushed.get(name))) {
+                    changed.put(name, value);
+                }
+            });
+            lastPushed = snapshot;
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("type", WebSocketTopic.STATS);
+            json.put("data", changed);
+            webSocketServer.sendToAllClient(WebSocketTopic.STATS, json.toJSONString());
+        } catch (Exception e) {
+            dirty.set(true);
+            log.warn("推送工作台数据失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 确保当日计数已初始化，当天第一次使用时加锁从数据库统计，同时重新统计处理中订单的计数
+     * 其他实例正在初始化时直接返回，期间的变更按订单、用户id去重写入，不会与初始化的统计重复
+     * @param today
+     */
+    private void prepare(LocalDate today) {
+        if (today.equals(seededDay)) {
+            return;
+        }
+        String dayKey = dayKey(today);
+        if (stringRedisTemplate.opsForHash().hasKey(dayKey, SEEDED)) {
+            seededDay = today;
+            return;
+        }
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(SEED_LOCK_PREFIX + today.format(DAY_FORMAT), "1", 60, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            //其他实例正在初始化
+            return;
+        }
+
+        //先建立临时哈希再查询数据库，查询开始后的变更都会写入临时哈希
+        stringRedisTemplate.opsForHash().put(ACTIVE_REBUILD_KEY, "rebuilding", "1");
+        stringRedisTemplate.expire(ACTIVE_REBUILD_KEY, 60, TimeUnit.SECONDS);
+
+        LocalDateTime begin = today.atStartOfDay();
+        LocalDateTime end = today.plusDays(1).atStartOfDay();
+        apply(today, orderMapper.listStatusByOrderTime(begin, end));
+
+        List<Long> userIds = userMapper.listIdsByCreateTime(begin, end);
+        for (int from = 0; from < userIds.size(); from += APPLY_BATCH_SIZE) {
+            Object[] args = userIds.subList(from, Math.min(from + APPLY_BATCH_SIZE, userIds.size())).stream()
+                    .map(String::valueOf).toArray();
+            stringRedisTemplate.execute(NEW_USER_SCRIPT, Arrays.asList(dayKey), args);
+        }
+
+        apply(Arrays.asList(dayKey, ACTIVE_REBUILD_KEY), null, orderMapper.listStatusByStatuses(
+                Arrays.asList(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS)));
+        stringRedisTemplate.execute(REPLACE_ACTIVE_SCRIPT, Arrays.asList(ACTIVE_REBUILD_KEY, ACTIVE_KEY));
+        stringRedisTemplate.execute(PRUNE_SCRIPT, Arrays.asList(ACTIVE_KEY),
+                String.valueOf(ACTIVE_LOW), String.valueOf(ACTIVE_HIGH));
+
+        stringRedisTemplate.opsForHash().put(dayKey, SEEDED, "1");
+        stringRedisTemplate.expire(dayKey, 2, TimeUnit.DAYS);
+        seededDay = today;
+        log.info("工作台计数初始化完成：{}", today);
+    }
+
+    private void apply(LocalDate today, List<Orders> ordersList) {
+        apply(Arrays.asList(dayKey(today), ACTIVE_KEY, ACTIVE_REBUILD_KEY), today, ordersList);
+    }
+
+    /**
+     * 分批执行计数脚本
+     * @param keys 当日哈希、处理中订单哈希，以及可选的重新统计中的哈希
+     * @param today 为null时不计入当日计数
+     * @param ordersList
+     */
+    private void apply(List<String> keys, LocalDate today, List<Orders> ordersList) {
+        for (int from = 0; from < ordersList.size(); from += APPLY_BATCH_SIZE) {
+            List<Orders> batch = ordersList.subList(from, Math.min(from + APPLY_BATCH_SIZE, ordersList.size()));
+            List<String> args = new ArrayList<>(3 + batch.size() * 4);
+            args.add(String.valueOf(Orders.COMPLETED));
+            args.add(String.valueOf(ACTIVE_LOW));
+            args.add(String.valueOf(ACTIVE_HIGH));
+            for (Orders orders : batch) {
+                args.add(String.valueOf(orders.getId()));
+                args.add(String.valueOf(orders.getStatus()));
+                args.add(String.valueOf(orders.getAmount() == null ? 0 : OrderPricer.toCents(orders.getAmount())));
+                args.add(today != null && orders.getOrderTime() != null
+                        && orders.getOrderTime().toLocalDate().equals(today) ? "1" : "0");
+            }
+            stringRedisTemplate.execute(APPLY_SCRIPT, keys, args.toArray());
+        }
+    }
+
+    private List<Long> values(String key, String... fields) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, Arrays.asList(fields));
+        List<Long> result = new ArrayList<>(fields.length);
+        for (Object value : values) {
+            result.add(value == null ? 0L : Long.parseLong(value.toString()));
+        }
+        return result;
+    }
+
+    private static String dayKey(LocalDate day) {
+        return DAY_PREFIX + day.format(DAY_FORMAT);
+    }
+}
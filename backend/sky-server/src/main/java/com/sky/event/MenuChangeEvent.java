@@ -0,0 +1,39 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 菜单变更事件，由分类、菜品、套餐的增删改在事务内发布，事务提交后由监听器处理
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuChangeEvent {
+
+    //发生变更的分类id
+    @Builder.Default
+    private Set<Long> categoryIds = new HashSet<>();
+
+    //发生变更的菜品id
+    @Builder.Default
+    private Set<Long> dishIds = new HashSet<>();
+
+    //发生变更的套餐id
+    @Builder.Default
+    private Set<Long> setmealIds = new HashSet<>();
+
+    //需要清理菜品缓存的分类id，对应key：dish_分类id
+    @Builder.Default
+    private Set<Long> dishCategoryIds = new HashSet<>();
+
+    //需要清理套餐缓存的分类id，对应key：setmealCache::分类id
+    @Builder.Default
+    private Set<Long> setmealCategoryIds = new HashSet<>();
+}
@@ -0,0 +1,22 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 订单变更事件，由下单和订单状态流转在事务内发布，事务提交后由监听器处理
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderChangeEvent {
+
+    //发生变更的订单id
+    private List<Long> orderIds;
+
+    //是否为新下的订单
+    private boolean created;
+}
@@ -8,6 +8,8 @@ import com.sky.entity.Category;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
 import java.util.List;
 
 @Mapper
@@ -20,6 +22,7 @@ public interface CategoryMapper {
     @Insert("insert into category(type, name, sort, status, create_time, update_time, create_user, update_user)" +
             " VALUES" +
             " (#{type}, #{name}, #{sort}, #{status}, #{createTime}, #{updateTime}, #{createUser}, #{updateUser})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
     @AutoFill(value = OperationType.INSERT)
     void insert(Category category);
 
@@ -50,4 +53,26 @@ public interface CategoryMapper {
      * @return
      */
     List<Category> list(Integer type);
+
+    /**
+     * 根据状态查询分类id
+     * @param status
+     * @return
+     */
+    @Select("select id from category where status = #{status}")
+    List<Long> listIdsByStatus(Integer status);
+
+    /**
+     * 查询所有分类
+     * @return
+     */
+    @Select("select * from category")
+    List<Category> listAll();
+
+    /**
+     * 根据ids查询分类
+     * @param ids
+     * @return
+     */
+    List<Category> getByIds(List<Long> ids);
 }
@@ -35,4 +35,18 @@ public interface DishFlavorMapper {
      */
     @Delete("delete from dish_flavor where dish_id=#{dishId}")
     void deleteByDishId(Long dishId);
+
+    /**
+     * 查询所有口味
+     * @return
+     */
+    @Select("select * from dish_flavor")
+    List<DishFlavor> listAll();
+
+    /**
+     * 根据dishIds查询口味
+     * @param dishIds
+     * @return
+     */
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
 }
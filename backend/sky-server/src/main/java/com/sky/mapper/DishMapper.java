@@ -33,9 +33,10 @@ public interface DishMapper {
     /**
      * 菜品分页查询
      * @param dishPageQueryDTO
+     * @param ids 按名称搜索时由搜索索引得到的id，按相关度排序，为null时不按id过滤
      * @return
      */
-    Page<DishVO> pageQuery(DishPageQueryDTO dishPageQueryDTO);
+    Page<DishVO> pageQuery(DishPageQueryDTO dishPageQueryDTO, List<Long> ids);
 
     /**
      * 根据ID查询菜品
@@ -79,4 +80,20 @@ public interface DishMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按id顺序分批查询菜品id
+     * @param lastId 上一批的最大id
+     * @param size
+     * @return
+     */
+    @Select("select id from dish where id > #{lastId} order by id limit #{size}")
+    List<Long> listIdsAfter(Long lastId, int size);
+
+    /**
+     * 根据ids查询菜品
+     * @param ids
+     * @return
+     */
+    List<Dish> getByIds(List<Long> ids);
 }
@@ -21,4 +21,11 @@ public interface OrderDetailMapper {
      */
     @Select("select * from order_detail where order_id=#{orderId}")
     List<OrderDetail> getByOrderId(Long orderId);
+
+    /**
+     * 根据orderId批量查询关联的订单明细
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(List<Long> orderIds);
 }
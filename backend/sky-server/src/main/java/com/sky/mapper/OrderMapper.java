@@ -6,7 +6,10 @@ import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,6 +24,12 @@ public interface OrderMapper {
      */
     void insert(Orders orders);
 
+    /**
+     * 批量插入订单数据，回填主键
+     * @param ordersList
+     */
+    void insertBatch(List<Orders> ordersList);
+
     /**
      * 根据订单号查询订单
      * @param orderNumber
@@ -49,6 +58,29 @@ public interface OrderMapper {
     @Select("select * from orders where id=#{id}")
     Orders getById(Long orderId);
 
+    /**
+     * 根据id批量查询订单
+     * @param ids
+     * @return
+     */
+    List<Orders> getByIds(List<Long> ids);
+
+    /**
+     * 查询时间段内下单的订单id、状态和金额
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select id, status, amount, order_time from orders where order_time >= #{begin} and order_time < #{end}")
+    List<Orders> listStatusByOrderTime(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 查询处于指定状态的订单id、状态和金额
+     * @param statuses
+     * @return
+     */
+    List<Orders> listStatusByStatuses(List<Integer> statuses);
+
     /**
      * 根据状态统计订单数量
      * @param status
@@ -63,8 +95,58 @@ public interface OrderMapper {
      * @param time
      * @return
      */
-    @Select("select * from orders where status=#{status} and order_time < #{time}")
-    List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime time);
+    /**
+     * 按id顺序分批查询指定状态、下单时间早于指定时间的订单id，只查询id对分片总数取模等于分片序号的订单
+     * @param status
+     * @param time
+     * @param lastId 上一批的最大id
+     * @param size
+     * @param shardCount 分片总数
+     * @param shardIndex 分片序号
+     * @return
+     */
+    @Select("select id from orders where status=#{status} and order_time < #{time} and id > #{lastId} " +
+            "and mod(id, #{shardCount}) = #{shardIndex} order by id limit #{size}")
+    List<Long> listIdsByStatusAndOrderTimeLT(Integer status, LocalDateTime time, Long lastId, int size,
+                                             int shardCount, int shardIndex);
+
+    /**
+     * 批量修改订单状态，仅修改仍处于原状态的订单
+     * @param orders 修改后的状态及取消原因、取消时间、送达时间、支付状态、结账时间
+     * @param fromStatus 原状态
+     * @param ids
+     * @return 修改的行数
+     */
+    int updateStatusByIds(Orders orders, Integer fromStatus, List<Long> ids);
+
+    /**
+     * 批量修改支付状态，仅修改仍处于原支付状态的订单
+     * @param payStatus
+     * @param fromPayStatus
+     * @param ids
+     * @return 修改的行数
+     */
+    int updatePayStatusByIds(Integer payStatus, Integer fromPayStatus, List<Long> ids);
+
+    /**
+     * 记录已取消订单迟到的支付结果，仅修改仍为未支付的已取消订单
+     * @param id
+     * @param checkoutTime
+     * @return 修改的行数
+     */
+    @Update("update orders set pay_status = 1, checkout_time = #{checkoutTime} where id = #{id} and status = 6 and pay_status = 0")
+    int updatePaidIfCancelled(Long id, LocalDateTime checkoutTime);
+
+    /**
+     * 按订单号顺序流式查询支付时间在时间段内、已支付或已退款的订单
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select id, number, pay_status, amount, checkout_time from orders " +
+            "where checkout_time >= #{begin} and checkout_time < #{end} and pay_status in (1, 2) order by number")
+    @Options(fetchSize = Integer.MIN_VALUE)
+    Cursor<Orders> cursorPaidByCheckoutTime(LocalDateTime begin, LocalDateTime end);
 
     /**
      * 动态查询营业额
@@ -87,4 +169,29 @@ public interface OrderMapper {
      * @return
      */
     List<GoodsSalesDTO> getSalesTop10(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按id顺序分批查询订单id
+     * @param lastId 上一批的最大id
+     * @param size
+     * @return
+     */
+    @Select("select id from orders where id > #{lastId} order by id limit #{size}")
+    List<Long> listIdsAfter(Long lastId, int size);
+
+    /**
+     * 按id顺序分批查询未生成摘要的订单id
+     * @param lastId 上一批的最大id
+     * @param size
+     * @return
+     */
+    @Select("select id from orders where id > #{lastId} and order_dishes is null order by id limit #{size}")
+    List<Long> listIdsWithoutSummaryAfter(Long lastId, int size);
+
+    /**
+     * 修改订单摘要
+     * @param orders
+     */
+    @Update("update orders set order_dishes=#{orderDishes}, item_count=#{itemCount}, first_image=#{firstImage} where id=#{id}")
+    void updateSummary(Orders orders);
 }
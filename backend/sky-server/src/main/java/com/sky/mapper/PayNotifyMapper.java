@@ -0,0 +1,51 @@
+package com.sky.mapper;
+
+import com.sky.entity.PayNotify;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface PayNotifyMapper {
+
+    /**
+     * 写入支付回调，交易号已存在时忽略
+     * @param payNotify
+     * @return 写入的行数，重复回调返回0
+     */
+    @Insert("insert ignore into pay_notify(transaction_id, out_trade_no, success_time, status, attempts, create_time) " +
+            "values (#{transactionId}, #{outTradeNo}, #{successTime}, #{status}, 0, #{createTime})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertIgnore(PayNotify payNotify);
+
+    /**
+     * 查询收到时间早于指定时间、仍未处理的回调
+     * @param before
+     * @param maxAttempts 失败次数上限
+     * @param size
+     * @return
+     */
+    @Select("select * from pay_notify where status = 0 and create_time < #{before} and attempts < #{maxAttempts} " +
+            "order by id limit #{size}")
+    List<PayNotify> listPending(LocalDateTime before, int maxAttempts, int size);
+
+    /**
+     * 标记为已处理
+     * @param id
+     * @param processTime
+     */
+    @Update("update pay_notify set status = 1, process_time = #{processTime} where id = #{id}")
+    void markProcessed(Long id, LocalDateTime processTime);
+
+    /**
+     * 处理失败次数加一
+     * @param id
+     */
+    @Update("update pay_notify set attempts = attempts + 1 where id = #{id}")
+    void increaseAttempts(Long id);
+}
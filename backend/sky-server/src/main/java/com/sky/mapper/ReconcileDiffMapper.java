@@ -0,0 +1,25 @@
+package com.sky.mapper;
+
+import com.sky.entity.ReconcileDiff;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface ReconcileDiffMapper {
+
+    /**
+     * 批量写入对账差异
+     * @param diffs
+     */
+    void insertBatch(List<ReconcileDiff> diffs);
+
+    /**
+     * 删除某日的对账差异，重新对账前调用
+     * @param billDate
+     */
+    @Delete("delete from reconcile_diff where bill_date = #{billDate}")
+    void deleteByBillDate(LocalDate billDate);
+}
@@ -0,0 +1,53 @@
+package com.sky.mapper;
+
+import com.sky.entity.Refund;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface RefundMapper {
+
+    /**
+     * 写入退款意图，退款单号已存在时忽略
+     * @param refund
+     * @return 写入的行数
+     */
+    @Insert("insert ignore into refund(order_id, out_trade_no, out_refund_no, refund_amount, total_amount, status, " +
+            "attempts, next_retry_time, create_time) values (#{orderId}, #{outTradeNo}, #{outRefundNo}, " +
+            "#{refundAmount}, #{totalAmount}, #{status}, 0, #{nextRetryTime}, #{createTime})")
+    int insertIgnore(Refund refund);
+
+    /**
+     * 查询到期待退款或待查询退款结果的记录
+     * @param now
+     * @param size
+     * @return
+     */
+    @Select("select * from refund where status in (0, 3) and next_retry_time <= #{now} order by id limit #{size}")
+    List<Refund> listDue(LocalDateTime now, int size);
+
+    /**
+     * 批量标记为已退款，记录各自的微信支付退款单号
+     * @param refunds
+     * @param updateTime
+     */
+    void updateRefunded(List<Refund> refunds, LocalDateTime updateTime);
+
+    /**
+     * 批量标记为微信已受理，记录各自的微信支付退款单号和下次查询退款结果的时间
+     * @param refunds
+     * @param updateTime
+     */
+    void updateProcessing(List<Refund> refunds, LocalDateTime updateTime);
+
+    /**
+     * 批量记录调用失败，更新各自的状态、下次调用时间和失败原因
+     * @param refunds
+     * @param updateTime
+     */
+    void updateFailed(List<Refund> refunds, LocalDateTime updateTime);
+}
@@ -16,6 +16,13 @@ public interface SetmealDishMapper {
      */
     List<Long> getSetmealIdsByDishIds(List<Long> dishIds);
 
+    /**
+     * 查询ids中关联了套餐的菜品id
+     * @param dishIds
+     * @return
+     */
+    List<Long> getRelatedDishIds(List<Long> dishIds);
+
     /**
      * 批量插入套餐与菜品的关系
      * @param setmealDishes
@@ -35,4 +42,18 @@ public interface SetmealDishMapper {
      */
     @Select("select * from setmeal_dish where setmeal_id=#{setmealId}")
     List<SetmealDish> getBySetmealId(Long setmealId);
+
+    /**
+     * 查询所有套餐与菜品的关系
+     * @return
+     */
+    @Select("select * from setmeal_dish")
+    List<SetmealDish> listAll();
+
+    /**
+     * 根据套餐ids查询套餐与菜品的关系
+     * @param setmealIds
+     * @return
+     */
+    List<SetmealDish> getBySetmealIds(List<Long> setmealIds);
 }
@@ -42,9 +42,10 @@ public interface SetmealMapper {
     /**
      * 套餐分页查询
      * @param setmealPageQueryDTO
+     * @param ids 按名称搜索时由搜索索引得到的id，按相关度排序，为null时不按id过滤
      * @return
      */
-    Page<SetmealVO> pageQuery(SetmealPageQueryDTO setmealPageQueryDTO);
+    Page<SetmealVO> pageQuery(SetmealPageQueryDTO setmealPageQueryDTO, List<Long> ids);
 
     /**
      * 根据id查询套餐
@@ -77,10 +78,41 @@ public interface SetmealMapper {
             "where sd.setmeal_id = #{setmealId}")
     List<DishItemVO> getDishItemBySetmealId(Long setmealId);
 
+    /**
+     * 根据套餐ids查询所属的分类ids
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
     /**
      * 根据条件统计套餐数量
      * @param map
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按id顺序分批查询套餐id
+     * @param lastId 上一批的最大id
+     * @param size
+     * @return
+     */
+    @Select("select id from setmeal where id > #{lastId} order by id limit #{size}")
+    List<Long> listIdsAfter(Long lastId, int size);
+
+    /**
+     * 根据ids查询套餐
+     * @param ids
+     * @return
+     */
+    List<Setmeal> getByIds(List<Long> ids);
+
+    /**
+     * 根据ids批量修改套餐状态
+     * @param setmeal 状态及修改人信息
+     * @param ids
+     */
+    @AutoFill(value = OperationType.UPDATE)
+    void updateStatusByIds(Setmeal setmeal, List<Long> ids);
 }
@@ -18,19 +18,30 @@ public interface ShoppingCartMapper {
     List<ShoppingCart> list(ShoppingCart shoppingCart);
 
     /**
-     * 根据id修改购物车数据份数
-     * @param cart
+     * 插入购物车数据，商品已存在时数量累加
+     * @param shoppingCart
      */
-    @Update("update shopping_cart set number=#{number} where id=#{id}")
-    void updateNumberById(ShoppingCart cart);
+    @Insert("insert into shopping_cart(name, image, user_id, dish_id, setmeal_id, dish_flavor,number,amount, create_time) values " +
+            "(#{name},#{image},#{userId},#{dishId},#{setmealId},#{dishFlavor},#{number},#{amount},#{createTime}) " +
+            "on duplicate key update number=number+values(number)")
+    void upsert(ShoppingCart shoppingCart);
 
     /**
-     * 插入购物车数据
+     * 商品数量减一，仅在数量大于1时生效
      * @param shoppingCart
+     * @return 影响行数
      */
-    @Insert("insert into shopping_cart(name, image, user_id, dish_id, setmeal_id, dish_flavor,number,amount, create_time) values " +
-            "(#{name},#{image},#{userId},#{dishId},#{setmealId},#{dishFlavor},#{number},#{amount},#{createTime})")
-    void insert(ShoppingCart shoppingCart);
+    @Update("update shopping_cart set number=number-1 where user_id=#{userId} and dish_id<=>#{dishId} " +
+            "and setmeal_id<=>#{setmealId} and dish_flavor<=>#{dishFlavor} and number>1")
+    int decreaseNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 删除数量为1的商品
+     * @param shoppingCart
+     */
+    @Delete("delete from shopping_cart where user_id=#{userId} and dish_id<=>#{dishId} " +
+            "and setmeal_id<=>#{setmealId} and dish_flavor<=>#{dishFlavor} and number<=1")
+    void deleteLast(ShoppingCart shoppingCart);
 
     /**
      * 根据userId清空购物车
@@ -40,14 +51,13 @@ public interface ShoppingCartMapper {
     void deleteByUserId(Long userId);
 
     /**
-     * 根据id删除购物车数据
-     * @param id
+     * 根据userId批量清空购物车
+     * @param userIds
      */
-    @Delete("delete from shopping_cart where id=#{id}")
-    void deleteById(Long id);
+    void deleteByUserIds(List<Long> userIds);
 
     /**
-     * 批量插入购物车数据
+     * 批量插入购物车数据，商品已存在时数量累加
      * @param shoppingCartList
      */
     void insertBatch(List<ShoppingCart> shoppingCartList);
@@ -5,6 +5,8 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -38,4 +40,13 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 查询注册时间在时间段内的用户id
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select id from user where create_time >= #{begin} and create_time < #{end}")
+    List<Long> listIdsByCreateTime(LocalDateTime begin, LocalDateTime end);
 }
@@ -0,0 +1,66 @@
+package com.sky.order;
+
+import com.sky.dashboard.DashboardStats;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.event.OrderChangeEvent;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 订单变更事务提交后，一次查询变更后的订单，分别更新最近订单缓存、终态订单缓存和工作台计数
+ */
+@Component
+public class OrderChangeListener {
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+
+    @Autowired
+    private RecentOrderCache recentOrderCache;
+
+    @Autowired
+    private TerminalOrderCache terminalOrderCache;
+
+    @Autowired
+    private DashboardStats dashboardStats;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderChange(OrderChangeEvent event) {
+        if (event.getOrderIds() == null || event.getOrderIds().isEmpty()) {
+            return;
+        }
+        List<Orders> ordersList = orderMapper.getByIds(event.getOrderIds());
+
+        //新订单和进入终态的订单需要连同明细缓存，一次查询全部明细
+        List<Orders> terminalList = ordersList.stream()
+                .filter(o -> Orders.COMPLETED.equals(o.getStatus()) || Orders.CANCELLED.equals(o.getStatus()))
+                .collect(Collectors.toList());
+        List<Long> detailOrderIds = new ArrayList<>();
+        if (event.isCreated()) {
+            detailOrderIds.addAll(event.getOrderIds());
+        }
+        terminalList.forEach(orders -> detailOrderIds.add(orders.getId()));
+        Map<Long, List<OrderDetail>> detailMap = detailOrderIds.isEmpty() ? Collections.emptyMap()
+                : orderDetailMapper.getByOrderIds(detailOrderIds).stream()
+                        .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+
+        recentOrderCache.onOrdersChanged(ordersList, detailMap, event.isCreated());
+        if (!terminalList.isEmpty()) {
+            terminalOrderCache.onOrdersChanged(terminalList, detailMap);
+        }
+        dashboardStats.onOrdersChanged(ordersList);
+    }
+}
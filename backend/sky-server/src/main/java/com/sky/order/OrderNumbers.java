@@ -0,0 +1,19 @@
+package com.sky.order;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成，沿用毫秒时间戳格式，同一毫秒内的订单顺延到下一个值，保证本实例内不重复
+ */
+public class OrderNumbers {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private OrderNumbers() {
+    }
+
+    public static String next() {
+        long now = System.currentTimeMillis();
+        return String.valueOf(LAST.updateAndGet(last -> Math.max(now, last + 1)));
+    }
+}
@@ -0,0 +1,112 @@
+package com.sky.order;
+
+import com.sky.catalog.CatalogSnapshot;
+import com.sky.catalog.CatalogStore;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Dish;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单计价
+ * 按当前菜单数据重新计算商品金额、打包费和订单总金额，全程使用以分为单位的long运算
+ */
+@Component
+public class OrderPricer {
+
+    @Autowired
+    private CatalogStore catalogStore;
+
+    @Autowired
+    private OrderProperties orderProperties;
+
+    /**
+     * 根据购物车计价
+     * @param cartList
+     * @return
+     */
+    public PricedOrder price(List<ShoppingCart> cartList) {
+        CatalogSnapshot snapshot = catalogStore.snapshot();
+        List<OrderDetail> details = new ArrayList<>(cartList.size());
+        int itemCount = 0;
+        long itemCents = 0;
+        for (ShoppingCart cart : cartList) {
+            String name;
+            String image;
+            BigDecimal price;
+            if (cart.getDishId() != null) {
+                Dish dish = snapshot.getDish(cart.getDishId());
+                if (dish == null) {
+                    throw new OrderBusinessException(MessageConstant.ITEM_NOT_FOUND);
+                }
+                if (!StatusConstant.ENABLE.equals(dish.getStatus())) {
+                    throw new OrderBusinessException(dish.getName() + MessageConstant.ITEM_NOT_ON_SALE);
+                }
+                name = dish.getName();
+                image = dish.getImage();
+                price = dish.getPrice();
+            } else {
+                Setmeal setmeal = snapshot.getSetmeal(cart.getSetmealId());
+                if (setmeal == null) {
+                    throw new OrderBusinessException(MessageConstant.ITEM_NOT_FOUND);
+                }
+                if (!StatusConstant.ENABLE.equals(setmeal.getStatus())) {
+                    throw new OrderBusinessException(setmeal.getName() + MessageConstant.ITEM_NOT_ON_SALE);
+                }
+                name = setmeal.getName();
+                image = setmeal.getImage();
+                price = setmeal.getPrice();
+            }
+            int number = cart.getNumber();
+            itemCount += number;
+            itemCents += toCents(price) * number;
+
+            details.add(OrderDetail.builder()
+                    .name(name)
+                    .image(image)
+                    .dishId(cart.getDishId())
+                    .setmealId(cart.getSetmealId())
+                    .dishFlavor(cart.getDishFlavor())
+                    .number(number)
+                    .amount(price)
+                    .build());
+        }
+        long packCents = orderProperties.getPackFeeCents() * itemCount;
+        long deliveryCents = orderProperties.getDeliveryFeeCents();
+        return new PricedOrder(details, itemCount, itemCents, packCents, deliveryCents,
+                itemCents + packCents + deliveryCents);
+    }
+
+    /**
+     * 校验前端提交的金额与服务端计价是否一致，不一致时拒绝下单
+     * @param pricedOrder
+     * @param amount 前端提交的总金额
+     * @param packAmount 前端提交的打包费，单位元
+     */
+    public void verify(PricedOrder pricedOrder, BigDecimal amount, Integer packAmount) {
+        if (amount == null || toCents(amount) != pricedOrder.getTotalCents()) {
+            throw new OrderBusinessException(MessageConstant.ORDER_AMOUNT_MISMATCH);
+        }
+        if (packAmount != null && packAmount * 100L != pricedOrder.getPackCents()) {
+            throw new OrderBusinessException(MessageConstant.ORDER_AMOUNT_MISMATCH);
+        }
+    }
+
+    /**
+     * 元转分，前端按浮点数计算的金额可能带有多余小数位，四舍五入到分
+     */
+    public static long toCents(BigDecimal yuan) {
+        return yuan.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,196 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 下单提交管道
+ * 开启批量提交时，校验通过的订单进入有界队列，由单个写入线程凑批后在一个事务中提交，
+ * 多个订单共用一次提交；未开启或队列已满时在调用线程中单独提交
+ */
+@Component
+@Slf4j
+public class OrderSubmitPipeline {
+
+    @Autowired
+    private OrderWriter orderWriter;
+
+    @Autowired
+    private OrderProperties orderProperties;
+
+    private BlockingQueue<PendingOrder> queue;
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!orderProperties.isGroupCommit()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(orderProperties.getQueueCapacity());
+        running = true;
+        writerThread = new Thread(this::run, "order-group-commit");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("下单批量提交已开启，batchSize:{}，queueCapacity:{}",
+                orderProperties.getBatchSize(), orderProperties.getQueueCapacity());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(orderProperties.getSubmitTimeoutMillis());
+        //提交队列中剩余的订单
+        List<PendingOrder> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+    }
+
+    /**
+     * 提交订单
+     * @param orders
+     * @param details
+     * @return 待提交的订单，提交结果完成时订单已回填主键
+     */
+    public PendingOrder submit(Orders orders, List<OrderDetail> details) {
+        PendingOrder pendingOrder = new PendingOrder(orders, details);
+        if (!running || !queue.offer(pendingOrder)) {
+            //未开启批量提交或队列已满，直接单独提交
+            pendingOrder.claim();
+            orderWriter.write(Collections.singletonList(pendingOrder));
+            pendingOrder.getFuture().complete(orders);
+        }
+        return pendingOrder;
+    }
+
+    /**
+     * 提交订单并等待结果
+     * @param orders
+     * @param details
+     * @return
+     */
+    public Orders submitAndWait(Orders orders, List<OrderDetail> details) {
+        PendingOrder pendingOrder = submit(orders, details);
+        CompletableFuture<Orders> future = pendingOrder.getFuture();
+        try {
+            try {
+                return future.get(orderProperties.getSubmitTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //仍在队列中则放弃，写入线程不会再提交该订单；已开始写入则等待写入结果，避免返回失败后订单仍被创建
+                if (pendingOrder.abandon()) {
+                    throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_FAILED);
+                }
+                return future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_FAILED);
+        }
+    }
+
+    /**
+     * 写入线程：阻塞等待第一个订单，再在等待时间内凑满一批后提交
+     */
+    private void run() {
+        int batchSize = orderProperties.getBatchSize();
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(orderProperties.getLingerMillis());
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * 提交一批订单，整批失败时逐个重试，避免一个订单的错误影响同批的其他订单
+     */
+    private void flush(List<PendingOrder> pending) {
+        //跳过下单方已等待超时放弃的订单
+        List<PendingOrder> batch = new ArrayList<>(pending.size());
+        for (PendingOrder pendingOrder : pending) {
+            if (pendingOrder.claim()) {
+                batch.add(pendingOrder);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            orderWriter.write(batch);
+            batch.forEach(p -> p.getFuture().complete(p.getOrders()));
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).getFuture().completeExceptionally(e);
+                return;
+            }
+            log.error("订单批量提交失败，改为逐个提交，数量：{}", batch.size(), e);
+        }
+        for (PendingOrder pendingOrder : batch) {
+            //整批回滚后主键已回填，需清空后重新插入
+            pendingOrder.getOrders().setId(null);
+            try {
+                orderWriter.write(Collections.singletonList(pendingOrder));
+                pendingOrder.getFuture().complete(pendingOrder.getOrders());
+            } catch (Exception e) {
+                pendingOrder.getFuture().completeExceptionally(e);
+            }
+        }
+    }
+}
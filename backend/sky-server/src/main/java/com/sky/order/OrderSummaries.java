@@ -0,0 +1,50 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+
+import java.util.List;
+
+/**
+ * 订单摘要，根据订单明细生成订单菜品摘要、商品份数和第一个商品的图片，写入订单冗余字段
+ */
+public class OrderSummaries {
+
+    //与orders.order_dishes字段长度一致
+    private static final int MAX_LENGTH = 500;
+
+    private OrderSummaries() {
+    }
+
+    /**
+     * 根据订单明细填充订单摘要字段
+     * @param orders
+     * @param orderDetailList
+     */
+    public static void apply(Orders orders, List<OrderDetail> orderDetailList) {
+        orders.setOrderDishes(dishes(orderDetailList));
+        int itemCount = 0;
+        for (OrderDetail orderDetail : orderDetailList) {
+            itemCount += orderDetail.getNumber();
+        }
+        orders.setItemCount(itemCount);
+        orders.setFirstImage(orderDetailList.isEmpty() ? null : orderDetailList.get(0).getImage());
+    }
+
+    /**
+     * 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3）
+     * @param orderDetailList
+     * @return
+     */
+    public static String dishes(List<OrderDetail> orderDetailList) {
+        StringBuilder sb = new StringBuilder();
+        for (OrderDetail orderDetail : orderDetailList) {
+            sb.append(orderDetail.getName()).append('*').append(orderDetail.getNumber());
+        }
+        if (sb.length() > MAX_LENGTH) {
+            sb.setLength(MAX_LENGTH - 1);
+            sb.append('…');
+        }
+        return sb.toString();
+    }
+}
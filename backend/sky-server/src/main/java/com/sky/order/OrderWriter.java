@@ -0,0 +1,74 @@
+package com.sky.order;
+
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
+import com.sky.cart.CartStore;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.event.OrderChangeEvent;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单落库，在一个事务中写入一批订单、订单明细，并清空下单用户的购物车
+ */
+@Component
+public class OrderWriter {
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+
+    @Autowired
+    private CartStore cartStore;
+
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 批量写入订单
+     * @param batch
+     */
+    @Transactional
+    public void write(List<PendingOrder> batch) {
+        //1、多行插入订单，回填主键
+        List<Orders> ordersList = new ArrayList<>(batch.size());
+        for (PendingOrder pendingOrder : batch) {
+            ordersList.add(pendingOrder.getOrders());
+        }
+        orderMapper.insertBatch(ordersList);
+
+        //2、多行插入订单明细
+        List<OrderDetail> orderDetailList = new ArrayList<>();
+        List<Long> userIds = new ArrayList<>(batch.size());
+        for (PendingOrder pendingOrder : batch) {
+            Orders orders = pendingOrder.getOrders();
+            for (OrderDetail orderDetail : pendingOrder.getDetails()) {
+                orderDetail.setOrderId(orders.getId());  //设置当前订单明细关联的订单id
+                orderDetailList.add(orderDetail);
+            }
+            userIds.add(orders.getUserId());
+            idBloomFilters.put(BloomType.ORDER, orders.getId());
+        }
+        orderDetailMapper.insertBatch(orderDetailList);
+
+        //3、一次清空这批用户的购物车
+        cartStore.clearAll(userIds);
+
+        List<Long> orderIds = new ArrayList<>(batch.size());
+        ordersList.forEach(orders -> orderIds.add(orders.getId()));
+        eventPublisher.publishEvent(new OrderChangeEvent(orderIds, true));
+    }
+}
@@ -0,0 +1,47 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 待提交的订单，包含订单、订单明细以及提交结果
+ */
+@Getter
+public class PendingOrder {
+
+    private final Orders orders;
+
+    private final List<OrderDetail> details;
+
+    //提交完成后返回回填了主键的订单
+    private final CompletableFuture<Orders> future = new CompletableFuture<>();
+
+    //0等待写入 1已被写入线程取走 2下单方已放弃
+    private final AtomicInteger state = new AtomicInteger();
+
+    public PendingOrder(Orders orders, List<OrderDetail> details) {
+        this.orders = orders;
+        this.details = details;
+    }
+
+    /**
+     * 写入线程取走订单，下单方已放弃时返回false，该订单不再写入
+     * @return
+     */
+    public boolean claim() {
+        return state.compareAndSet(0, 1) || state.get() == 1;
+    }
+
+    /**
+     * 下单方等待超时后放弃订单，订单已被写入线程取走时返回false，需等待写入结果
+     * @return
+     */
+    public boolean abandon() {
+        return state.compareAndSet(0, 2);
+    }
+}
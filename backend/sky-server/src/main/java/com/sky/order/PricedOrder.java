@@ -0,0 +1,38 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 订单计价结果，金额单位均为分
+ */
+@Getter
+@AllArgsConstructor
+public class PricedOrder {
+
+    //订单明细，单价取自当前菜单数据
+    private final List<OrderDetail> details;
+
+    //商品份数
+    private final int itemCount;
+
+    //商品金额
+    private final long itemCents;
+
+    //打包费
+    private final long packCents;
+
+    //配送费
+    private final long deliveryCents;
+
+    //订单总金额
+    private final long totalCents;
+
+    public BigDecimal getAmount() {
+        return BigDecimal.valueOf(totalCents, 2);
+    }
+}
@@ -0,0 +1,268 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.properties.OrderProperties;
+import com.sky.result.PageResult;
+import com.sky.vo.OrderVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 用户最近订单缓存
+ * 每个用户最近的若干条订单（含明细）保存在redis中，并在本地保留一份短期副本，
+ * 历史订单第一页直接从缓存返回；下单和订单状态流转在事务提交后由OrderChangeListener直接更新缓存中的订单，
+ * 多个节点可能同时更新同一用户的缓存，更新通过WATCH乐观锁提交，冲突时重试，多次冲突后改为写入占位
+ */
+@Component
+@Slf4j
+public class RecentOrderCache implements MessageListener {
+
+    //本地缓存失效的同步频道，消息格式：节点id:用户id
+    public static final String CHANNEL = "sky:order:recent:evict";
+
+    private static final String KEY_PREFIX = "order:recent:";
+
+    //缓存不存在时发生变更，写入占位防止并发查询把变更前的数据写回缓存，单位秒
+    private static final long PLACEHOLDER_TTL = 5;
+
+    //乐观锁冲突时的最大尝试次数
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private OrderProperties orderProperties;
+
+    private Map<Long, LocalEntry> local;
+
+    @PostConstruct
+    public void init() {
+        int max = orderProperties.getRecentLocalSize();
+        local = Collections.synchronizedMap(new LinkedHashMap<Long, LocalEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, LocalEntry> eldest) {
+                return size() > max;
+            }
+        });
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 从缓存查询历史订单，无法由缓存满足时返回null
+     * @param userId
+     * @param page
+     * @param pageSize
+     * @param status
+     * @return
+     */
+    public PageResult get(Long userId, int page, int pageSize, Integer status) {
+        if (page != 1 || pageSize > orderProperties.getRecentSize()) {
+            return null;
+        }
+        RecentOrders recent = load(userId);
+        if (recent == null) {
+            return null;
+        }
+        List<OrderVO> orders = recent.getOrders();
+        if (status == null) {
+            return new PageResult(recent.getTotal(), new ArrayList<>(orders.subList(0, Math.min(pageSize, orders.size()))));
+        }
+        //缓存中已包含该用户全部订单时，可直接按状态筛选
+        if (recent.getTotal() <= orders.size()) {
+            List<OrderVO> filtered = orders.stream()
+                    .filter(o -> status.equals(o.getStatus()))
+                    .collect(Collectors.toList());
+            return new PageResult(filtered.size(), new ArrayList<>(filtered.subList(0, Math.min(pageSize, filtered.size()))));
+        }
+        return null;
+    }
+
+    /**
+     * 查询数据库后写入缓存，仅在第一页、不按状态筛选且条数不少于缓存数量时调用
+     * @param userId
+     * @param total
+     * @param orders
+     */
+    public void put(Long userId, long total, List<OrderVO> orders) {
+        int size = orderProperties.getRecentSize();
+        RecentOrders recent = new RecentOrders(total, new ArrayList<>(orders.subList(0, Math.min(size, orders.size()))));
+        //缓存已存在或存在占位时不覆盖，避免写回变更前的数据
+        Boolean success = redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + userId, recent,
+                orderProperties.getRecentTtlMinutes(), TimeUnit.MINUTES);
+        if (Boolean.TRUE.equals(success)) {
+            putLocal(userId, recent);
+        }
+    }
+
+    /**
+     * 订单变更后，更新相关用户的缓存
+     * @param ordersList 变更后的订单
+     * @param detailMap 新订单的明细，按订单id分组
+     * @param created 是否为新下的订单
+     */
+    public void onOrdersChanged(List<Orders> ordersList, Map<Long, List<OrderDetail>> detailMap, boolean created) {
+        Map<Long, List<Orders>> userOrders = ordersList.stream().collect(Collectors.groupingBy(Orders::getUserId));
+        for (Map.Entry<Long, List<Orders>> entry : userOrders.entrySet()) {
+            Long userId = entry.getKey();
+            try {
+                update(userId, entry.getValue(), detailMap, created);
+            } catch (Exception e) {
+                //更新失败时删除缓存，下次查询重新加载
+                log.error("更新最近订单缓存失败，userId：{}", userId, e);
+                redisTemplate.delete(KEY_PREFIX + userId);
+                evict(userId);
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf(':');
+        if (index < 0 || nodeId.equals(body.substring(0, index))) {
+            return;
+        }
+        local.remove(Long.valueOf(body.substring(index + 1)));
+    }
+
+    private void update(Long userId, List<Orders> changed, Map<Long, List<OrderDetail>> detailMap, boolean created) {
+        String key = KEY_PREFIX + userId;
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            RecentOrders recent = (RecentOrders) redisTemplate.execute(new SessionCallback<RecentOrders>() {
+                @Override
+                public RecentOrders execute(RedisOperations operations) {
+                    operations.watch(key);
+                    RecentOrders current = (RecentOrders) operations.opsForValue().get(key);
+                    if (current == null || current.getOrders() == null) {
+                        operations.unwatch();
+                        return new RecentOrders();
+                    }
+                    merge(current, changed, detailMap, created);
+                    operations.multi();
+                    operations.opsForValue().set(key, current, orderProperties.getRecentTtlMinutes(), TimeUnit.MINUTES);
+                    List<Object> result = operations.exec();
+                    //期间被其他节点修改，事务未执行
+                    return result == null || result.isEmpty() ? null : current;
+                }
+            });
+            if (recent == null) {
+                continue;
+            }
+            if (recent.getOrders() == null) {
+                break;
+            }
+            putLocal(userId, recent);
+            return;
+        }
+
+        //缓存不存在或多次冲突，写入占位，下次查询从数据库重新加载
+        redisTemplate.opsForValue().set(key, new RecentOrders(), PLACEHOLDER_TTL, TimeUnit.SECONDS);
+        evict(userId);
+    }
+
+    /**
+     * 把变更的订单合并到缓存的最近订单中
+     */
+    private void merge(RecentOrders recent, List<Orders> changed, Map<Long, List<OrderDetail>> detailMap, boolean created) {
+        List<OrderVO> orders = recent.getOrders();
+        for (Orders o : changed) {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(o, orderVO);
+            int index = indexOf(orders, o.getId());
+            if (index >= 0) {
+                //已缓存的订单，更新订单字段，保留明细
+                orderVO.setOrderDetailList(orders.get(index).getOrderDetailList());
+                orders.set(index, orderVO);
+            } else if (created) {
+                orderVO.setOrderDetailList(detailMap.getOrDefault(o.getId(), new ArrayList<>()));
+                orders.add(orderVO);
+                recent.setTotal(recent.getTotal() + 1);
+            }
+        }
+        //与历史订单查询保持一致，按下单时间倒序，只保留最近的若干条
+        orders.sort(Comparator.comparing(OrderVO::getOrderTime, Comparator.nullsLast(Comparator.reverseOrder())));
+        int size = orderProperties.getRecentSize();
+        if (orders.size() > size) {
+            recent.setOrders(new ArrayList<>(orders.subList(0, size)));
+        }
+    }
+
+    private RecentOrders load(Long userId) {
+        LocalEntry entry = local.get(userId);
+        if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+            return entry.recent;
+        }
+        RecentOrders recent = (RecentOrders) redisTemplate.opsForValue().get(KEY_PREFIX + userId);
+        if (recent == null || recent.getOrders() == null) {
+            local.remove(userId);
+            return null;
+        }
+        local.put(userId, new LocalEntry(recent, System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(orderProperties.getRecentLocalTtlSeconds())));
+        return recent;
+    }
+
+    private void putLocal(Long userId, RecentOrders recent) {
+        local.put(userId, new LocalEntry(recent, System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(orderProperties.getRecentLocalTtlSeconds())));
+        stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + userId);
+    }
+
+    private void evict(Long userId) {
+        local.remove(userId);
+        stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + userId);
+    }
+
+    private static int indexOf(List<OrderVO> orders, Long orderId) {
+        for (int i = 0; i < orders.size(); i++) {
+            if (orderId.equals(orders.get(i).getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class LocalEntry {
+
+        private final RecentOrders recent;
+
+        private final long expireAt;
+
+        LocalEntry(RecentOrders recent, long expireAt) {
+            this.recent = recent;
+            this.expireAt = expireAt;
+        }
+    }
+}
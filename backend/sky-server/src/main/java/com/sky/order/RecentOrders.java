@@ -0,0 +1,26 @@
+package com.sky.order;
+
+import com.sky.vo.OrderVO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 用户最近订单，按下单时间倒序
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecentOrders implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //用户订单总数
+    private long total;
+
+    //最近的订单及明细，为null时表示占位，缓存未生效
+    private List<OrderVO> orders;
+}
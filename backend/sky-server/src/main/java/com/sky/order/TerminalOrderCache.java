@@ -0,0 +1,188 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.properties.OrderProperties;
+import com.sky.vo.OrderVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 已完成、已取消订单的详情缓存
+ * 终态订单不再变化，组装好的订单详情保存在本地，按估算的内存占用限制总量，超出时淘汰最久未访问的订单；
+ * 已取消但仍为已支付的订单还会因退款修改支付状态，不缓存；另按写入时间设置有效期，兜底漏收的淘汰通知
+ */
+@Component
+@Slf4j
+public class TerminalOrderCache implements MessageListener {
+
+    //终态订单再次变更（如退款）时的同步频道，消息格式：节点id:订单id
+    public static final String CHANNEL = "sky:order:terminal:evict";
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private OrderProperties orderProperties;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    //按访问顺序排列，便于淘汰最久未访问的订单
+    private final LinkedHashMap<Long, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    //当前估算占用的字节数
+    private long bytes;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 判断订单是否处于终态
+     * @param orders
+     * @return
+     */
+    public static boolean isTerminal(Orders orders) {
+        if (Orders.COMPLETED.equals(orders.getStatus())) {
+            return true;
+        }
+        //已取消的已支付订单等待退款，支付状态还会变化
+        return Orders.CANCELLED.equals(orders.getStatus()) && !Orders.PAID.equals(orders.getPayStatus());
+    }
+
+    /**
+     * 查询订单详情，未缓存时返回null
+     * @param orderId
+     * @return
+     */
+    public synchronized OrderVO get(Long orderId) {
+        Entry entry = cache.get(orderId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.writeTime > orderProperties.getTerminalCacheTtlSeconds() * 1000) {
+            remove(orderId);
+            return null;
+        }
+        return entry.orderVO;
+    }
+
+    /**
+     * 缓存终态订单详情，非终态订单忽略
+     * @param orderVO
+     */
+    public synchronized void put(OrderVO orderVO) {
+        if (!isTerminal(orderVO)) {
+            return;
+        }
+        long size = estimateSize(orderVO);
+        long max = orderProperties.getTerminalCacheMaxBytes();
+        if (size > max) {
+            return;
+        }
+        Entry old = cache.put(orderVO.getId(), new Entry(orderVO, size, System.currentTimeMillis()));
+        if (old != null) {
+            bytes -= old.size;
+        }
+        bytes += size;
+
+        //超出内存上限，淘汰最久未访问的订单
+        Iterator<Entry> iterator = cache.values().iterator();
+        while (bytes > max && iterator.hasNext()) {
+            bytes -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 订单变更后，缓存进入终态的订单，等待退款的已取消订单只淘汰旧数据，并通知其他节点淘汰旧数据
+     * @param ordersList 变更后的已完成、已取消订单
+     * @param detailMap 订单明细，按订单id分组
+     */
+    public void onOrdersChanged(List<Orders> ordersList, Map<Long, List<OrderDetail>> detailMap) {
+        for (Orders orders : ordersList) {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(orders, orderVO);
+            orderVO.setOrderDetailList(detailMap.getOrDefault(orders.getId(), new ArrayList<>()));
+            if (isTerminal(orderVO)) {
+                put(orderVO);
+            } else {
+                remove(orders.getId());
+            }
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + orders.getId());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf(':');
+        if (index < 0 || nodeId.equals(body.substring(0, index))) {
+            return;
+        }
+        remove(Long.valueOf(body.substring(index + 1)));
+    }
+
+    private synchronized void remove(Long orderId) {
+        Entry old = cache.remove(orderId);
+        if (old != null) {
+            bytes -= old.size;
+        }
+    }
+
+    /**
+     * 估算订单详情占用的内存：对象头及字段按固定大小计，字符串按字符数计
+     */
+    private static long estimateSize(OrderVO orderVO) {
+        long size = 512 + chars(orderVO.getNumber()) + chars(orderVO.getRemark()) + chars(orderVO.getUserName())
+                + chars(orderVO.getPhone()) + chars(orderVO.getAddress()) + chars(orderVO.getConsignee())
+                + chars(orderVO.getCancelReason()) + chars(orderVO.getRejectionReason())
+                + chars(orderVO.getOrderDishes()) + chars(orderVO.getFirstImage());
+        if (orderVO.getOrderDetailList() != null) {
+            for (OrderDetail orderDetail : orderVO.getOrderDetailList()) {
+                size += 160 + chars(orderDetail.getName()) + chars(orderDetail.getImage()) + chars(orderDetail.getDishFlavor());
+            }
+        }
+        return size;
+    }
+
+    private static long chars(String s) {
+        return s == null ? 0 : 40 + s.length() * 2L;
+    }
+
+    private static class Entry {
+
+        private final OrderVO orderVO;
+
+        private final long size;
+
+        //写入时间，毫秒
+        private final long writeTime;
+
+        Entry(OrderVO orderVO, long size, long writeTime) {
+            this.orderVO = orderVO;
+            this.size = size;
+            this.writeTime = writeTime;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.sky.pay;
+
+/**
+ * 交易账单中的一笔支付
+ */
+public class BillRecord {
+
+    //商户订单号
+    private final String outTradeNo;
+
+    //微信支付交易号
+    private final String transactionId;
+
+    //应结订单金额，单位分
+    private final long amountCents;
+
+    public BillRecord(String outTradeNo, String transactionId, long amountCents) {
+        this.outTradeNo = outTradeNo;
+        this.transactionId = transactionId;
+        this.amountCents = amountCents;
+    }
+
+    public String getOutTradeNo() {
+        return outTradeNo;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * 排序临时文件中的一行：商户订单号\t交易号\t金额
+     */
+    String toLine() {
+        return outTradeNo + '\t' + transactionId + '\t' + amountCents;
+    }
+
+    static BillRecord fromLine(String line) {
+        int first = line.indexOf('\t');
+        int second = line.indexOf('\t', first + 1);
+        return new BillRecord(line.substring(0, first), line.substring(first + 1, second),
+                Long.parseLong(line.substring(second + 1)));
+    }
+}
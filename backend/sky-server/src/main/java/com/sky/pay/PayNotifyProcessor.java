@@ -0,0 +1,100 @@
+package com.sky.pay;
+
+import com.sky.annotation.DistributedJob;
+import com.sky.entity.PayNotify;
+import com.sky.mapper.PayNotifyMapper;
+import com.sky.properties.PayProperties;
+import com.sky.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 支付回调处理
+ * 回调写入收件箱后交给工作线程异步处理；订单状态按原状态条件更新，重复处理同一回调不会重复修改订单和来单提醒。
+ * 线程池已满、处理失败或实例重启时未处理的回调，由定时任务重新处理
+ */
+@Component
+@Slf4j
+public class PayNotifyProcessor {
+
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    @Autowired
+    private PayNotifyMapper payNotifyMapper;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private PayProperties payProperties;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(payProperties.getNotifyWorkers(), payProperties.getNotifyWorkers(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(payProperties.getNotifyQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "pay-notify-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 提交回调异步处理，线程池已满时留给定时任务处理
+     * @param payNotify
+     */
+    public void submit(PayNotify payNotify) {
+        try {
+            executor.execute(() -> process(payNotify));
+        } catch (RejectedExecutionException e) {
+            log.warn("支付回调处理繁忙，交易号{}稍后处理", payNotify.getTransactionId());
+        }
+    }
+
+    /**
+     * 重新处理超时未处理的回调
+     */
+    @Scheduled(fixedDelay = 10000)
+    @DistributedJob("payNotifySweep")
+    public void sweep() {
+        LocalDateTime before = LocalDateTime.now().minusSeconds(payProperties.getNotifyRetryDelaySeconds());
+        List<PayNotify> list = payNotifyMapper.listPending(before, payProperties.getNotifyMaxAttempts(), SWEEP_BATCH_SIZE);
+        if (!list.isEmpty()) {
+            log.info("重新处理未完成的支付回调：{}条", list.size());
+        }
+        list.forEach(this::process);
+    }
+
+    private void process(PayNotify payNotify) {
+        try {
+            //结账时间取支付完成时间，与交易账单的日期一致；缺少时取收到回调的时间
+            orderService.paySuccess(payNotify.getOutTradeNo(),
+                    payNotify.getSuccessTime() != null ? payNotify.getSuccessTime() : payNotify.getCreateTime());
+            payNotifyMapper.markProcessed(payNotify.getId(), LocalDateTime.now());
+        } catch (Exception e) {
+            log.error("处理支付回调失败，交易号：{}，商户订单号：{}", payNotify.getTransactionId(), payNotify.getOutTradeNo(), e);
+            payNotifyMapper.increaseAttempts(payNotify.getId());
+        }
+    }
+}
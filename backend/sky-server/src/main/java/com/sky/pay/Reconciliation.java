@@ -0,0 +1,132 @@
+package com.sky.pay;
+
+import com.sky.entity.Orders;
+import com.sky.entity.ReconcileDiff;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.ReconcileDiffMapper;
+import com.sky.order.OrderPricer;
+import com.sky.properties.PayProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 支付对账
+ * 交易账单按商户订单号外部排序，订单按订单号顺序流式读取，两边归并比对，差异分批写入reconcile_diff，
+ * 内存占用与账单和订单的数量无关；
+ * 订单的结账时间记录的是回调中的支付完成时间，与账单的交易时间一致，按结账时间取当日订单不会因回调延迟跨天而误报
+ */
+@Component
+@Slf4j
+public class Reconciliation {
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private ReconcileDiffMapper reconcileDiffMapper;
+
+    @Autowired
+    private PayProperties payProperties;
+
+    /**
+     * 对账，重新对账时覆盖该日已有的差异
+     * @param billDate 账单日期
+     * @param bill 该日的交易账单文件
+     * @return 差异数量
+     * @throws IOException
+     */
+    public long reconcile(LocalDate billDate, Path bill) throws IOException {
+        long start = System.currentTimeMillis();
+        reconcileDiffMapper.deleteByBillDate(billDate);
+
+        DiffWriter writer = new DiffWriter(billDate);
+        long orderCount = 0;
+        long billCount;
+        //流式查询独占一个连接，差异通过其他连接写入
+        try (SortedTradeBill sortedBill = new SortedTradeBill(bill, payProperties.getReconcileChunkSize());
+             SqlSession sqlSession = sqlSessionFactory.openSession();
+             Cursor<Orders> cursor = sqlSession.getMapper(OrderMapper.class)
+                     .cursorPaidByCheckoutTime(billDate.atStartOfDay(), billDate.plusDays(1).atStartOfDay())) {
+            Iterator<Orders> orders = cursor.iterator();
+            BillRecord record = sortedBill.next();
+            Orders order = orders.hasNext() ? orders.next() : null;
+            while (record != null || order != null) {
+                int cmp = record == null ? 1 : order == null ? -1 : record.getOutTradeNo().compareTo(order.getNumber());
+                if (cmp < 0) {
+                    writer.add(ReconcileDiff.MISSING_ORDER, record, null);
+                    record = sortedBill.next();
+                } else if (cmp > 0) {
+                    writer.add(ReconcileDiff.MISSING_BILL, null, order);
+                    order = orders.hasNext() ? orders.next() : null;
+                    orderCount++;
+                } else {
+                    if (record.getAmountCents() != OrderPricer.toCents(order.getAmount())) {
+                        writer.add(ReconcileDiff.AMOUNT_MISMATCH, record, order);
+                    }
+                    record = sortedBill.next();
+                    order = orders.hasNext() ? orders.next() : null;
+                    orderCount++;
+                }
+            }
+            billCount = sortedBill.getCount();
+        }
+        writer.flush();
+
+        log.info("{}对账完成，账单{}笔，订单{}笔，差异{}笔，耗时{}ms", billDate, billCount, orderCount,
+                writer.count, System.currentTimeMillis() - start);
+        return writer.count;
+    }
+
+    /**
+     * 差异缓冲，攒满一批后写入
+     */
+    private class DiffWriter {
+
+        private final LocalDate billDate;
+
+        private final List<ReconcileDiff> buffer = new ArrayList<>();
+
+        private long count;
+
+        DiffWriter(LocalDate billDate) {
+            this.billDate = billDate;
+        }
+
+        void add(Integer type, BillRecord record, Orders order) {
+            buffer.add(ReconcileDiff.builder()
+                    .billDate(billDate)
+                    .type(type)
+                    .outTradeNo(record != null ? record.getOutTradeNo() : order.getNumber())
+                    .transactionId(record == null ? null : record.getTransactionId())
+                    .orderId(order == null ? null : order.getId())
+                    .orderAmount(order == null ? null : order.getAmount())
+                    .billAmount(record == null ? null : BigDecimal.valueOf(record.getAmountCents(), 2))
+                    .createTime(LocalDateTime.now())
+                    .build());
+            count++;
+            if (buffer.size() >= payProperties.getReconcileBatchSize()) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!buffer.isEmpty()) {
+                reconcileDiffMapper.insertBatch(buffer);
+                buffer.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.sky.pay;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.annotation.DistributedJob;
+import com.sky.entity.Orders;
+import com.sky.entity.Refund;
+import com.sky.event.OrderChangeEvent;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.RefundMapper;
+import com.sky.properties.PayProperties;
+import com.sky.utils.WeChatPayUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 退款发件箱
+ * 取消、拒单时在同一事务中写入退款意图，接口不再同步调用微信退款；
+ * 定时任务批量取出到期的退款并发调用退款接口，结果按批更新，失败时按指数退避重试；
+ * 微信受理后退款可能仍在处理中，此时记录退款单号，之后定时查询退款结果，仅退款成功时修改订单支付状态
+ */
+@Component
+@Slf4j
+public class RefundOutbox {
+
+    @Autowired
+    private RefundMapper refundMapper;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private WeChatPayUtil weChatPayUtil;
+
+    @Autowired
+    private PayProperties payProperties;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(payProperties.getRefundConcurrency(), r -> {
+            Thread thread = new Thread(r, "refund-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 写入订单的退款意图，需在修改订单状态的事务中调用；同一订单只退款一次
+     * 未接入微信支付时订单并未真实付款，直接修改支付状态为退款
+     * @param ordersDB
+     */
+    public void enqueue(Orders ordersDB) {
+        if (!payProperties.isWechatPay()) {
+            orderMapper.updatePayStatusByIds(Orders.REFUND, Orders.PAID, Collections.singletonList(ordersDB.getId()));
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Refund refund = Refund.builder()
+                .orderId(ordersDB.getId())
+                .outTradeNo(ordersDB.getNumber())
+                .outRefundNo(ordersDB.getNumber())
+                .refundAmount(ordersDB.getAmount())
+                .totalAmount(ordersDB.getAmount())
+                .status(Refund.PENDING)
+                .nextRetryTime(now)
+                .createTime(now)
+                .build();
+        if (refundMapper.insertIgnore(refund) > 0) {
+            log.info("申请退款：{}", ordersDB.getNumber());
+        }
+    }
+
+    /**
+     * 批量处理到期的退款，直到没有到期的记录
+     */
+    @Scheduled(fixedDelayString = "${sky.pay.refund-interval:2000}")
+    @DistributedJob("refundOutbox")
+    public void process() {
+        List<Refund> due;
+        do {
+            due = refundMapper.listDue(LocalDateTime.now(), payProperties.getRefundBatchSize());
+            if (!due.isEmpty()) {
+                processBatch(due);
+            }
+        } while (due.size() == payProperties.getRefundBatchSize());
+    }
+
+    private void processBatch(List<Refund> batch) {
+        List<CompletableFuture<Refund>> futures = batch.stream()
+                .map(refund -> CompletableFuture.supplyAsync(() -> call(refund), executor))
+                .collect(Collectors.toList());
+
+        List<Refund> refunded = new ArrayList<>();
+        List<Refund> processing = new ArrayList<>();
+        List<Refund> failed = new ArrayList<>();
+        for (CompletableFuture<Refund> future : futures) {
+            Refund refund = future.join();
+            if (Refund.REFUNDED.equals(refund.getStatus())) {
+                refunded.add(refund);
+            } else if (Refund.PROCESSING.equals(refund.getStatus())) {
+                processing.add(refund);
+            } else {
+                failed.add(refund);
+            }
+        }
+
+        List<Long> orderIds = refunded.stream().map(Refund::getOrderId).collect(Collectors.toList());
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!refunded.isEmpty()) {
+                refundMapper.updateRefunded(refunded, now);
+                orderMapper.updatePayStatusByIds(Orders.REFUND, Orders.PAID, orderIds);
+            }
+            if (!processing.isEmpty()) {
+                refundMapper.updateProcessing(processing, now);
+            }
+            if (!failed.isEmpty()) {
+                refundMapper.updateFailed(failed, now);
+            }
+        });
+        if (!orderIds.isEmpty()) {
+            eventPublisher.publishEvent(new OrderChangeEvent(orderIds, false));
+        }
+        log.info("退款处理完成：成功{}笔，处理中{}笔，失败{}笔", refunded.size(), processing.size(), failed.size());
+    }
+
+    /**
+     * 调用微信退款接口，已受理的退款改为查询退款结果，返回带有处理结果的退款记录
+     */
+    private Refund call(Refund refund) {
+        Refund result = Refund.builder().id(refund.getId()).orderId(refund.getOrderId()).build();
+        String message;
+        try {
+            String response = Refund.PROCESSING.equals(refund.getStatus())
+                    ? weChatPayUtil.queryRefund(refund.getOutRefundNo())
+                    : weChatPayUtil.refund(refund.getOutTradeNo(), refund.getOutRefundNo(),
+                    refund.getRefundAmount(), refund.getTotalAmount());
+            JSONObject jsonObject = JSON.parseObject(response);
+            //退款状态 SUCCESS退款成功 PROCESSING退款处理中 CLOSED退款关闭 ABNORMAL退款异常
+            String refundStatus = jsonObject == null ? null : jsonObject.getString("status");
+            if ("SUCCESS".equals(refundStatus)) {
+                result.setStatus(Refund.REFUNDED);
+                result.setRefundId(jsonObject.getString("refund_id"));
+                return result;
+            }
+            if ("PROCESSING".equals(refundStatus)) {
+                result.setStatus(Refund.PROCESSING);
+                result.setRefundId(jsonObject.getString("refund_id"));
+                result.setNextRetryTime(LocalDateTime.now().plusSeconds(payProperties.getRefundBackoffSeconds()));
+                return result;
+            }
+            if ("CLOSED".equals(refundStatus) || "ABNORMAL".equals(refundStatus)) {
+                //退款关闭或异常需人工处理，不再重试
+                log.error("退款未成功，商户退款单号：{}，退款状态：{}", refund.getOutRefundNo(), refundStatus);
+                result.setStatus(Refund.FAILED);
+                result.setNextRetryTime(refund.getNextRetryTime());
+                result.setMessage("退款状态：" + refundStatus);
+                return result;
+            }
+            message = response;
+        } catch (Exception e) {
+            message = e.getMessage();
+        }
+
+        int attempts = refund.getAttempts() + 1;
+        log.warn("退款失败，商户退款单号：{}，第{}次：{}", refund.getOutRefundNo(), attempts, message);
+        result.setMessage(message != null && message.length() > 255 ? message.substring(0, 255) : message);
+        if (attempts >= payProperties.getRefundMaxAttempts()) {
+            result.setStatus(Refund.FAILED);
+            result.setNextRetryTime(refund.getNextRetryTime());
+        } else {
+            long backoff = Math.min(payProperties.getRefundBackoffSeconds() << Math.min(attempts - 1, 20),
+                    payProperties.getRefundMaxBackoffSeconds());
+            result.setStatus(Refund.PENDING);
+            result.setNextRetryTime(LocalDateTime.now().plusSeconds(backoff));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,173 @@
+package com.sky.pay;
+
+import com.sky.order.OrderPricer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 按商户订单号排序的交易账单
+ * 逐行读取微信支付交易账单，只保留交易状态为SUCCESS的支付记录；账单本身按交易时间排列，
+ * 每读满一块在内存中排序后写入临时文件，读取时对各块归并，内存占用只与块大小有关
+ */
+@Slf4j
+public class SortedTradeBill implements Closeable {
+
+    private static final String SUMMARY_PREFIX = "总交易单数";
+
+    private final List<Path> chunks = new ArrayList<>();
+
+    private final List<BufferedReader> readers = new ArrayList<>();
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(head -> head.record.getOutTradeNo()));
+
+    //账单中的支付记录数
+    private long count;
+
+    /**
+     * 读取账单并分块排序
+     * @param bill 账单文件，字段以`开头、逗号分隔，第一行为表头，末尾为汇总行
+     * @param chunkSize 每块的记录数
+     * @throws IOException
+     */
+    public SortedTradeBill(Path bill, int chunkSize) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(bill, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            //去掉可能存在的BOM
+            List<String> columns = Arrays.asList(header.replace("\uFEFF", "").split(","));
+            int outTradeNoIndex = indexOf(columns, "商户订单号");
+            int transactionIdIndex = indexOf(columns, "微信订单号");
+            int stateIndex = indexOf(columns, "交易状态");
+            int amountIndex = indexOf(columns, "应结订单金额");
+
+            List<BillRecord> buffer = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SUMMARY_PREFIX)) {
+                    break;
+                }
+                if (!line.startsWith("`")) {
+                    continue;
+                }
+                //字段值均以`开头，按",`"切分，商品名称中的逗号不影响切分
+                String[] fields = line.substring(1).split(",`", -1);
+                if (!"SUCCESS".equals(fields[stateIndex])) {
+                    continue;
+                }
+                buffer.add(new BillRecord(fields[outTradeNoIndex], fields[transactionIdIndex],
+                        OrderPricer.toCents(new BigDecimal(fields[amountIndex]))));
+                count++;
+                if (buffer.size() >= chunkSize) {
+                    writeChunk(buffer);
+                }
+            }
+            if (!buffer.isEmpty()) {
+                writeChunk(buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        for (Path chunk : chunks) {
+            BufferedReader reader = Files.newBufferedReader(chunk, StandardCharsets.UTF_8);
+            readers.add(reader);
+            advance(reader);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 按商户订单号顺序取出下一条记录
+     * @return 没有更多记录时返回null
+     */
+    public BillRecord next() {
+        Head head = heads.poll();
+        if (head == null) {
+            return null;
+        }
+        advance(head.reader);
+        return head.record;
+    }
+
+    @Override
+    public void close() {
+        for (BufferedReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.warn("关闭账单临时文件失败：{}", e.getMessage());
+            }
+        }
+        for (Path chunk : chunks) {
+            try {
+                Files.deleteIfExists(chunk);
+            } catch (IOException e) {
+                log.warn("删除账单临时文件失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    private void writeChunk(List<BillRecord> buffer) throws IOException {
+        buffer.sort(Comparator.comparing(BillRecord::getOutTradeNo));
+        Path chunk = Files.createTempFile("tradebill-", ".tmp");
+        chunks.add(chunk);
+        try (BufferedWriter writer = Files.newBufferedWriter(chunk, StandardCharsets.UTF_8)) {
+            for (BillRecord record : buffer) {
+                writer.write(record.toLine());
+                writer.newLine();
+            }
+        }
+        buffer.clear();
+    }
+
+    private void advance(BufferedReader reader) {
+        try {
+            String line = reader.readLine();
+            if (line != null) {
+                heads.add(new Head(BillRecord.fromLine(line), reader));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int indexOf(List<String> columns, String name) {
+        int index = columns.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("账单缺少字段：" + name);
+        }
+        return index;
+    }
+
+    private static class Head {
+
+        private final BillRecord record;
+
+        private final BufferedReader reader;
+
+        Head(BillRecord record, BufferedReader reader) {
+            this.record = record;
+            this.reader = reader;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.sky.search;
+
+import com.sky.catalog.CatalogSnapshot;
+import com.sky.catalog.CatalogStore;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 菜品、套餐名称和描述的内存搜索索引
+ * 名称和描述按单字、二元组建立倒排表，名称的拼音首字母按前缀建立倒排表
+ * 索引基于CatalogStore的快照构建，快照替换后在下次查询时重建
+ */
+@Component
+@Slf4j
+public class MenuSearchIndex {
+
+    //匹配得分
+    private static final int NAME_EQUALS = 100;
+    private static final int NAME_PREFIX = 80;
+    private static final int NAME_CONTAINS = 60;
+    private static final int INITIALS_PREFIX = 50;
+    private static final int INITIALS_CONTAINS = 30;
+    private static final int DESCRIPTION_CONTAINS = 20;
+
+    @Autowired
+    private CatalogStore catalogStore;
+
+    private volatile Index index;
+
+    /**
+     * 按名称、描述和拼音首字母搜索菜品，按相关度排序，用于用户端搜索
+     * @param keyword
+     * @return 菜品id
+     */
+    public List<Long> searchDishIds(String keyword) {
+        return current().dishes.search(normalize(keyword), false);
+    }
+
+    /**
+     * 只按名称搜索菜品，按相关度排序，用于管理端分页查询
+     * @param name
+     * @return 菜品id
+     */
+    public List<Long> searchDishIdsByName(String name) {
+        return current().dishes.search(normalize(name), true);
+    }
+
+    /**
+     * 只按名称搜索套餐，按相关度排序，用于管理端分页查询
+     * @param name
+     * @return 套餐id
+     */
+    public List<Long> searchSetmealIdsByName(String name) {
+        return current().setmeals.search(normalize(name), true);
+    }
+
+    private Index current() {
+        CatalogSnapshot snapshot = catalogStore.snapshot();
+        Index idx = index;
+        if (idx == null || idx.source != snapshot) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null || idx.source != snapshot) {
+                    long start = System.nanoTime();
+                    idx = new Index(snapshot);
+                    index = idx;
+                    log.info("菜单搜索索引重建完成，版本：{}，耗时：{}μs", snapshot.getVersion(), (System.nanoTime() - start) / 1000);
+                }
+            }
+        }
+        return idx;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 某个快照对应的索引，创建后不再修改
+     */
+    private static final class Index {
+        private final CatalogSnapshot source;
+        private final Segment dishes;
+        private final Segment setmeals;
+
+        Index(CatalogSnapshot snapshot) {
+            this.source = snapshot;
+            List<Doc> dishDocs = new ArrayList<>();
+            for (Dish dish : snapshot.getDishes().values()) {
+                dishDocs.add(new Doc(dish.getId(), dish.getName(), dish.getDescription()));
+            }
+            List<Doc> setmealDocs = new ArrayList<>();
+            for (Setmeal setmeal : snapshot.getSetmeals().values()) {
+                setmealDocs.add(new Doc(setmeal.getId(), setmeal.getName(), setmeal.getDescription()));
+            }
+            this.dishes = new Segment(dishDocs);
+            this.setmeals = new Segment(setmealDocs);
+        }
+    }
+
+    private static final class Doc {
+        private final long id;
+        private final String name;
+        private final String description;
+        private final String initials;
+
+        Doc(long id, String name, String description) {
+            this.id = id;
+            this.name = normalize(name);
+            this.description = normalize(description);
+            this.initials = PinyinUtil.initials(name);
+        }
+    }
+
+    /**
+     * 一类文档的倒排索引，倒排表中保存文档下标，按下标升序
+     */
+    private static final class Segment {
+        private final Doc[] docs;
+        private final Map<String, int[]> grams;
+        private final Map<String, int[]> initialPrefixes;
+
+        Segment(List<Doc> docList) {
+            this.docs = docList.toArray(new Doc[0]);
+            Map<String, List<Integer>> gramLists = new HashMap<>();
+            Map<String, List<Integer>> prefixLists = new HashMap<>();
+            for (int i = 0; i < docs.length; i++) {
+                addGrams(gramLists, docs[i].name, i);
+                addGrams(gramLists, docs[i].description, i);
+                String initials = docs[i].initials;
+                for (int len = 1; len <= initials.length(); len++) {
+                    addPosting(prefixLists, initials.substring(0, len), i);
+                }
+            }
+            this.grams = toArrays(gramLists);
+            this.initialPrefixes = toArrays(prefixLists);
+        }
+
+        /**
+         * @param q 归一化后的关键字
+         * @param nameOnly 为true时只做名称子串匹配，与原先的 like '%name%' 结果一致
+         */
+        List<Long> search(String q, boolean nameOnly) {
+            List<Long> result = new ArrayList<>();
+            if (q.isEmpty()) {
+                return result;
+            }
+
+            int[] scores = new int[docs.length];
+            for (int i : candidatesByGrams(q)) {
+                Doc doc = docs[i];
+                if (doc.name.equals(q)) {
+                    scores[i] = NAME_EQUALS;
+                } else if (doc.name.startsWith(q)) {
+                    scores[i] = NAME_PREFIX;
+                } else if (doc.name.contains(q)) {
+                    scores[i] = NAME_CONTAINS;
+                } else if (!nameOnly && doc.description.contains(q)) {
+                    scores[i] = DESCRIPTION_CONTAINS;
+                }
+            }
+            if (!nameOnly && isAlphanumeric(q)) {
+                //拼音首字母前缀匹配
+                for (int i : initialPrefixes.getOrDefault(q, new int[0])) {
+                    scores[i] = Math.max(scores[i], INITIALS_PREFIX);
+                }
+                //首字母中间匹配，如 jd 匹配 宫保鸡丁
+                for (int i = 0; i < docs.length; i++) {
+                    if (scores[i] == 0 && q.length() > 1 && docs[i].initials.contains(q)) {
+                        scores[i] = INITIALS_CONTAINS;
+                    }
+                }
+            }
+
+            List<Integer> hits = new ArrayList<>();
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0) {
+                    hits.add(i);
+                }
+            }
+            hits.sort(Comparator.<Integer>comparingInt(i -> -scores[i])
+                    .thenComparingInt(i -> docs[i].name.length())
+                    .thenComparingLong(i -> docs[i].id));
+            for (int i : hits) {
+                result.add(docs[i].id);
+            }
+            return result;
+        }
+
+        /**
+         * 关键字所有二元组倒排表的交集，单字时使用单字倒排表，结果仍需校验是否连续出现
+         */
+        private int[] candidatesByGrams(String q) {
+            if (q.length() == 1) {
+                return grams.getOrDefault(q, new int[0]);
+            }
+            int[] result = null;
+            for (int i = 0; i + 2 <= q.length(); i++) {
+                int[] postings = grams.get(q.substring(i, i + 2));
+                if (postings == null) {
+                    return new int[0];
+                }
+                result = result == null ? postings : intersect(result, postings);
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        private static void addGrams(Map<String, List<Integer>> lists, String text, int doc) {
+            for (int i = 0; i < text.length(); i++) {
+                addPosting(lists, text.substring(i, i + 1), doc);
+                if (i + 2 <= text.length()) {
+                    addPosting(lists, text.substring(i, i + 2), doc);
+                }
+            }
+        }
+
+        private static void addPosting(Map<String, List<Integer>> lists, String key, int doc) {
+            List<Integer> list = lists.computeIfAbsent(key, k -> new ArrayList<>());
+            //同一文档按顺序添加，只需和最后一个比较去重
+            if (list.isEmpty() || list.get(list.size() - 1) != doc) {
+                list.add(doc);
+            }
+        }
+
+        private static Map<String, int[]> toArrays(Map<String, List<Integer>> lists) {
+            Map<String, int[]> map = new HashMap<>(lists.size() * 2);
+            lists.forEach((key, list) -> map.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+            return map;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] out = new int[Math.min(a.length, b.length)];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] == b[j]) {
+                    out[n++] = a[i];
+                    i++;
+                    j++;
+                } else if (a[i] < b[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static boolean isAlphanumeric(String q) {
+            for (int i = 0; i < q.length(); i++) {
+                char c = q.charAt(i);
+                if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
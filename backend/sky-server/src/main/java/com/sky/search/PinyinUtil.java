@@ -0,0 +1,67 @@
+package com.sky.search;
+
+import java.nio.charset.Charset;
+
+/**
+ * 汉字拼音首字母工具，根据GB2312一级汉字按拼音排序的编码区间计算，不依赖拼音库
+ * 二级汉字及其他字符没有首字母，字母和数字原样保留
+ */
+public class PinyinUtil {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    //一级汉字各声母的起始区位码
+    private static final int[] BOUNDARIES = {1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212,
+            3472, 3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590};
+    private static final char[] LETTERS = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'j', 'k', 'l',
+            'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'w', 'x', 'y', 'z'};
+
+    private PinyinUtil() {
+    }
+
+    /**
+     * 获取字符串的拼音首字母，如 宫保鸡丁 -> gbjd
+     * @param text
+     * @return
+     */
+    public static String initials(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                if (Character.isLetterOrDigit(c)) {
+                    builder.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            char initial = initial(c);
+            if (initial != 0) {
+                builder.append(initial);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 单个汉字的拼音首字母，无法识别时返回0
+     */
+    static char initial(char c) {
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return 0;
+        }
+        int code = ((bytes[0] & 0xff) - 160) * 100 + ((bytes[1] & 0xff) - 160);
+        if (code < BOUNDARIES[0] || code >= BOUNDARIES[BOUNDARIES.length - 1]) {
+            return 0;
+        }
+        for (int i = LETTERS.length - 1; i >= 0; i--) {
+            if (code >= BOUNDARIES[i]) {
+                return LETTERS[i];
+            }
+        }
+        return 0;
+    }
+}
@@ -62,4 +62,11 @@ public interface DishService {
      * @return
      */
     List<DishVO> listWithFlavor(Dish dish);
+
+    /**
+     * 搜索起售中的菜品
+     * @param keyword
+     * @return
+     */
+    List<DishVO> search(String keyword);
 }
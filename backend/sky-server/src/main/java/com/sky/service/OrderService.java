@@ -7,6 +7,8 @@ import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 
+import java.time.LocalDateTime;
+
 public interface OrderService {
     /**
      * 用户下单
@@ -28,6 +30,13 @@ public interface OrderService {
      */
     void paySuccess(String outTradeNo);
 
+    /**
+     * 支付成功，修改订单状态，结账时间记为微信支付的支付完成时间
+     * @param outTradeNo
+     * @param payTime
+     */
+    void paySuccess(String outTradeNo, LocalDateTime payTime);
+
     /**
      * 查询历史订单
      * @param page
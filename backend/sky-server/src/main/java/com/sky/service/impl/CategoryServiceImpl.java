@@ -2,12 +2,15 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.CategoryDTO;
 import com.sky.dto.CategoryPageQueryDTO;
 import com.sky.entity.Category;
+import com.sky.event.MenuChangeEvent;
 import com.sky.exception.DeletionNotAllowedException;
 import com.sky.mapper.CategoryMapper;
 import com.sky.mapper.DishMapper;
@@ -17,8 +20,10 @@ import com.sky.service.CategoryService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -34,6 +39,10 @@ public class CategoryServiceImpl implements CategoryService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     /**
      * 新增分类
@@ -54,6 +63,8 @@ public class CategoryServiceImpl implements CategoryService {
         //category.setUpdateUser(BaseContext.getCurrentId());
 
         categoryMapper.insert(category);
+
+        publishChange(category.getId());
     }
 
     /**
@@ -89,6 +100,8 @@ public class CategoryServiceImpl implements CategoryService {
 
         //删除分类数据
         categoryMapper.deleteById(id);
+
+        publishChange(id);
     }
 
     /**
@@ -104,6 +117,8 @@ public class CategoryServiceImpl implements CategoryService {
         //category.setUpdateUser(BaseContext.getCurrentId());
 
         categoryMapper.update(category);
+
+        publishChange(category.getId());
     }
 
     /**
@@ -119,6 +134,13 @@ public class CategoryServiceImpl implements CategoryService {
                 //updateUser(BaseContext.getCurrentId())
                 .build();
         categoryMapper.update(category);
+
+        //启用的分类加入布隆过滤器，停用的分类在下次重建时移除
+        if(StatusConstant.ENABLE.equals(status)){
+            idBloomFilters.put(BloomType.CATEGORY,id);
+        }
+
+        publishChange(id);
     }
 
     /**
@@ -129,4 +151,14 @@ public class CategoryServiceImpl implements CategoryService {
     public List<Category> list(Integer type) {
         return categoryMapper.list(type);
     }
+
+    /**
+     * 发布分类变更事件
+     * @param id
+     */
+    private void publishChange(Long id) {
+        eventPublisher.publishEvent(MenuChangeEvent.builder()
+                .categoryIds(Collections.singleton(id))
+                .build());
+    }
 }
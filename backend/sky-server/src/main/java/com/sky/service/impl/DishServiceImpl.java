@@ -2,6 +2,8 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.catalog.CatalogSnapshot;
+import com.sky.catalog.CatalogStore;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.DishDTO;
@@ -9,23 +11,30 @@ import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
 import com.sky.entity.DishFlavor;
 import com.sky.entity.Setmeal;
+import com.sky.event.MenuChangeEvent;
 import com.sky.exception.DeletionNotAllowedException;
 import com.sky.mapper.DishFlavorMapper;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
+import com.sky.search.MenuSearchIndex;
 import com.sky.service.DishService;
 import com.sky.vo.DishVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -43,6 +52,15 @@ public class DishServiceImpl implements DishService {
     @Autowired
     private SetmealMapper setmealMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private CatalogStore catalogStore;
+
+    @Autowired
+    private MenuSearchIndex menuSearchIndex;
+
     /**
      * 新增菜品和口味
      * @param dishDTO
@@ -65,6 +83,12 @@ public class DishServiceImpl implements DishService {
             //向口味表插入多条数据
             dishFlavorMapper.insertBatch(flavors);
         }
+
+        //事务提交后清理该分类的菜品缓存
+        eventPublisher.publishEvent(MenuChangeEvent.builder()
+                .dishIds(Collections.singleton(dishId))
+                .dishCategoryIds(Collections.singleton(dish.getCategoryId()))
+                .build());
     }
 
     /**
@@ -73,8 +97,17 @@ public class DishServiceImpl implements DishService {
      * @return
      */
     public PageResult pageQuery(DishPageQueryDTO dishPageQueryDTO) {
+        //按名称搜索时先通过搜索索引得到菜品id，避免like全表扫描
+        List<Long> ids = null;
+        String name = dishPageQueryDTO.getName();
+        if(name!=null&&!name.trim().isEmpty()){
+            ids = menuSearchIndex.searchDishIdsByName(name);
+            if(ids.isEmpty()){
+                return new PageResult(0,new ArrayList<>());
+            }
+        }
         PageHelper.startPage(dishPageQueryDTO.getPage(),dishPageQueryDTO.getPageSize());
-        Page<DishVO>page=dishMapper.pageQuery(dishPageQueryDTO);
+        Page<DishVO>page=dishMapper.pageQuery(dishPageQueryDTO,ids);
         return new PageResult(page.getTotal(),page.getResult());
     }
 
@@ -84,25 +117,50 @@ public class DishServiceImpl implements DishService {
      */
     @Transactional
     public void deleteBatch(List<Long> ids) {
-        //判断菜品能否删除
+        //一次查询出所有菜品，用于校验和获取所属分类
+        List<Dish> dishes=dishMapper.getByIds(ids);
+
+        //判断菜品能否删除，收集所有不能删除的菜品一并提示
         //1.菜品是否起售
-        for (Long id : ids) {
-            Dish dish=dishMapper.getById(id);
-            if(dish.getStatus()== StatusConstant.ENABLE){
-                throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
+        List<String> onSale=new ArrayList<>();
+        for (Dish dish : dishes) {
+            if(StatusConstant.ENABLE.equals(dish.getStatus())){
+                onSale.add(dish.getName());
             }
         }
 
         //2.菜品是否有关联的套餐
-        List<Long> setmealIds =setmealDishMapper.getSetmealIdsByDishIds(ids);
-        if(setmealIds!=null && setmealIds.size()>0){
-            throw new DeletionNotAllowedException(MessageConstant.DISH_BE_RELATED_BY_SETMEAL);
+        Set<Long> relatedIds=new HashSet<>(setmealDishMapper.getRelatedDishIds(ids));
+        List<String> related=new ArrayList<>();
+        for (Dish dish : dishes) {
+            if(relatedIds.contains(dish.getId())){
+                related.add(dish.getName());
+            }
         }
 
+        List<String> failures=new ArrayList<>();
+        if(!onSale.isEmpty()){
+            failures.add(MessageConstant.DISH_ON_SALE+"："+String.join("、",onSale));
+        }
+        if(!related.isEmpty()){
+            failures.add(MessageConstant.DISH_BE_RELATED_BY_SETMEAL+"："+String.join("、",related));
+        }
+        if(!failures.isEmpty()){
+            throw new DeletionNotAllowedException(String.join("；",failures));
+        }
+
+        //删除前记录菜品所属的分类，用于清理缓存
+        Set<Long> categoryIds=dishes.stream().map(Dish::getCategoryId).collect(Collectors.toSet());
+
         //批量删除菜品
         dishMapper.deleteBatch(ids);
         //批量删除菜品关联的口味
         dishFlavorMapper.deleteBatch(ids);
+
+        eventPublisher.publishEvent(MenuChangeEvent.builder()
+                .dishIds(new HashSet<>(ids))
+                .dishCategoryIds(categoryIds)
+                .build());
     }
 
     /**
@@ -129,6 +187,9 @@ public class DishServiceImpl implements DishService {
      */
     @Transactional
     public void updateWithFlavor(DishDTO dishDTO) {
+        //修改前的分类，菜品可能被移动到其他分类，新旧分类的缓存都需要清理
+        Dish dishDB=dishMapper.getById(dishDTO.getId());
+
         //修改菜品
         Dish dish=new Dish();
         BeanUtils.copyProperties(dishDTO,dish);
@@ -147,6 +208,16 @@ public class DishServiceImpl implements DishService {
             //向口味表插入多条数据
             dishFlavorMapper.insertBatch(flavors);
         }
+
+        MenuChangeEvent event = MenuChangeEvent.builder().build();
+        event.getDishIds().add(dishId);
+        if(dishDB!=null){
+            event.getDishCategoryIds().add(dishDB.getCategoryId());
+        }
+        if(dishDTO.getCategoryId()!=null){
+            event.getDishCategoryIds().add(dishDTO.getCategoryId());
+        }
+        eventPublisher.publishEvent(event);
     }
 
     /**
@@ -163,6 +234,13 @@ public class DishServiceImpl implements DishService {
                 .build();
         dishMapper.update(dish);
 
+        MenuChangeEvent event = MenuChangeEvent.builder().build();
+        event.getDishIds().add(id);
+        Dish dishDB = dishMapper.getById(id);
+        if(dishDB!=null){
+            event.getDishCategoryIds().add(dishDB.getCategoryId());
+        }
+
         //若停售菜品，则包含该菜品的套餐也将停售
         if(status==StatusConstant.DISABLE){
             //获取需要停售的套餐id
@@ -171,15 +249,18 @@ public class DishServiceImpl implements DishService {
             List<Long> setmealIds = setmealDishMapper.getSetmealIdsByDishIds(dishIds);
 
             if(setmealIds!=null&&setmealIds.size()>0){
-                for (Long setmealId : setmealIds) {
-                    Setmeal setmeal=Setmeal.builder()
-                            .status(status)
-                            .id(setmealId)
-                            .build();
-                    setmealMapper.update(setmeal);
-                }
+                //一条语句停售所有相关套餐
+                Setmeal setmeal=Setmeal.builder()
+                        .status(status)
+                        .build();
+                setmealMapper.updateStatusByIds(setmeal,setmealIds);
+                //被停售的套餐所在分类的套餐缓存也需要清理
+                event.getSetmealIds().addAll(setmealIds);
+                event.getSetmealCategoryIds().addAll(setmealMapper.getCategoryIdsByIds(setmealIds));
             }
         }
+
+        eventPublisher.publishEvent(event);
     }
 
     /**
@@ -201,6 +282,22 @@ public class DishServiceImpl implements DishService {
      * @return
      */
     public List<DishVO> listWithFlavor(Dish dish) {
+        //用户端按分类查询时从内存菜单数据中读取，不再逐个查询口味
+        if(dish.getCategoryId()!=null&&dish.getName()==null){
+            CatalogSnapshot snapshot = catalogStore.snapshot();
+            List<DishVO> dishVOList = new ArrayList<>();
+            for (Dish d : snapshot.getDishesByCategory(dish.getCategoryId())) {
+                if(dish.getStatus()!=null&&!dish.getStatus().equals(d.getStatus())){
+                    continue;
+                }
+                DishVO dishVO = new DishVO();
+                BeanUtils.copyProperties(d,dishVO);
+                dishVO.setFlavors(snapshot.getFlavors(d.getId()));
+                dishVOList.add(dishVO);
+            }
+            return dishVOList;
+        }
+
         List<Dish> dishList = dishMapper.list(dish);
 
         List<DishVO> dishVOList = new ArrayList<>();
@@ -218,4 +315,25 @@ public class DishServiceImpl implements DishService {
 
         return dishVOList;
     }
+
+    /**
+     * 搜索起售中的菜品，按相关度排序
+     * @param keyword
+     * @return
+     */
+    public List<DishVO> search(String keyword) {
+        CatalogSnapshot snapshot = catalogStore.snapshot();
+        List<DishVO> dishVOList = new ArrayList<>();
+        for (Long id : menuSearchIndex.searchDishIds(keyword)) {
+            Dish d = snapshot.getDish(id);
+            if(d==null||!StatusConstant.ENABLE.equals(d.getStatus())){
+                continue;
+            }
+            DishVO dishVO = new DishVO();
+            BeanUtils.copyProperties(d,dishVO);
+            dishVO.setFlavors(snapshot.getFlavors(id));
+            dishVOList.add(dishVO);
+        }
+        return dishVOList;
+    }
 }
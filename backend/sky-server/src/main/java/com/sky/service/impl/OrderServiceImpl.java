@@ -5,14 +5,28 @@ import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
+import com.sky.cart.CartStore;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
+import com.sky.dashboard.DashboardStats;
 import com.sky.dto.*;
 import com.sky.entity.*;
+import com.sky.event.OrderChangeEvent;
 import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.order.OrderNumbers;
+import com.sky.order.OrderPricer;
+import com.sky.order.OrderSubmitPipeline;
+import com.sky.order.OrderSummaries;
+import com.sky.order.PricedOrder;
+import com.sky.order.RecentOrderCache;
+import com.sky.order.TerminalOrderCache;
+import com.sky.pay.RefundOutbox;
+import com.sky.properties.OrderProperties;
 import com.sky.result.PageResult;
 import com.sky.service.OrderService;
 import com.sky.utils.HttpClientUtil;
@@ -22,19 +36,22 @@ import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketTopic;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -50,7 +67,7 @@ public class OrderServiceImpl implements OrderService {
     private AddressBookMapper addressBookMapper;
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
 
     @Autowired
     private UserMapper userMapper;
@@ -61,6 +78,33 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private WebSocketServer webSocketServer;
 
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+
+    @Autowired
+    private OrderPricer orderPricer;
+
+    @Autowired
+    private OrderSubmitPipeline orderSubmitPipeline;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private RecentOrderCache recentOrderCache;
+
+    @Autowired
+    private TerminalOrderCache terminalOrderCache;
+
+    @Autowired
+    private DashboardStats dashboardStats;
+
+    @Autowired
+    private RefundOutbox refundOutbox;
+
+    @Autowired
+    private OrderProperties orderProperties;
+
     @Value("${sky.shop.address}")
     private String shopAddress;
 
@@ -71,7 +115,6 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersSubmitDTO
      * @return
      */
-    @Transactional
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
         //1、处理业务异常
         //地址数据为空
@@ -85,17 +128,19 @@ public class OrderServiceImpl implements OrderService {
 
         //购物车数据为空
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart=new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = cartStore.list(userId);
         if(shoppingCartList==null||shoppingCartList.size()==0){
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
 
-        //2、向订单表插入一条数据
+        //按当前菜单数据计价，与前端提交的金额不一致时拒绝下单
+        PricedOrder pricedOrder = orderPricer.price(shoppingCartList);
+        orderPricer.verify(pricedOrder,ordersSubmitDTO.getAmount(),ordersSubmitDTO.getPackAmount());
+
+        //2、构造订单数据
         Orders orders=new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO,orders);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));  //用时间戳设置订单号
+        orders.setNumber(OrderNumbers.next());  //用时间戳设置订单号
         orders.setStatus(Orders.PENDING_PAYMENT);
         orders.setUserId(userId);
         orders.setOrderTime(LocalDateTime.now());
@@ -103,22 +148,12 @@ public class OrderServiceImpl implements OrderService {
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setAddress(addressBook.getDetail());
+        orders.setAmount(pricedOrder.getAmount());
+        orders.setPackAmount((int) (pricedOrder.getPackCents()/100));
+        OrderSummaries.apply(orders,pricedOrder.getDetails());  //订单菜品摘要写入订单，列表查询无需再查明细
 
-        orderMapper.insert(orders);
-
-        //3、向订单明细表插入n条数据
-        List<OrderDetail> orderDetailList = new ArrayList<>();
-        for (ShoppingCart cart : shoppingCartList) {
-            OrderDetail orderDetail=new OrderDetail();  //订单明细
-            BeanUtils.copyProperties(cart,orderDetail);
-            orderDetail.setOrderId(orders.getId());  //设置当前订单明细关联的订单id
-            orderDetailList.add(orderDetail);
-        }
-
-        orderDetailMapper.insertBatch(orderDetailList);
-
-        //4、删除该用户购物车数据
-        shoppingCartMapper.deleteByUserId(userId);
+        //3、写入订单、订单明细并删除该用户购物车数据，开启批量提交时与其他订单合并为一个事务
+        orderSubmitPipeline.submitAndWait(orders,pricedOrder.getDetails());
 
         //5、封装VO返回结果
         OrderSubmitVO orderSubmitVO=OrderSubmitVO.builder()
@@ -205,11 +240,15 @@ public class OrderServiceImpl implements OrderService {
         // 当前登录用户id
         Long userId = BaseContext.getCurrentId();
         User user = userMapper.getById(userId);
+        Orders ordersDB = orderMapper.getByNumber(ordersPaymentDTO.getOrderNumber());
+        if (ordersDB == null || !userId.equals(ordersDB.getUserId())) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
 
         //调用微信支付接口，生成预支付交易单
         JSONObject jsonObject = weChatPayUtil.pay(
                 ordersPaymentDTO.getOrderNumber(), //商户订单号
-                new BigDecimal(0.01), //支付金额，单位 元
+                ordersDB.getAmount(), //支付金额，单位 元
                 "苍穹外卖订单", //商品描述
                 user.getOpenid() //微信用户的openid
         );
@@ -225,24 +264,54 @@ public class OrderServiceImpl implements OrderService {
     }
 
     /**
-     * 支付成功，修改订单状态
+     * 支付成功，修改订单状态，结账时间记为当前时间
      *
      * @param outTradeNo
      */
+    @Transactional
     public void paySuccess(String outTradeNo) {
+        paySuccess(outTradeNo, LocalDateTime.now());
+    }
+
+    /**
+     * 支付成功，修改订单状态，结账时间记为支付完成时间，对账时据此匹配交易账单的日期
+     * 仅修改仍处于待付款状态的订单，重复的支付结果直接忽略；
+     * 订单已因超时被取消时记录支付并申请退款，避免用户付款后款项无人处理
+     *
+     * @param outTradeNo
+     * @param payTime
+     */
+    @Transactional
+    public void paySuccess(String outTradeNo, LocalDateTime payTime) {
 
         // 根据订单号查询订单
         Orders ordersDB = orderMapper.getByNumber(outTradeNo);
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
 
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
+        // 根据订单id更新订单的状态、支付状态、结账时间
         Orders orders = Orders.builder()
                 .id(ordersDB.getId())
                 .status(Orders.TO_BE_CONFIRMED)
                 .payStatus(Orders.PAID)
-                .checkoutTime(LocalDateTime.now())
+                .checkoutTime(payTime)
                 .build();
 
-        orderMapper.update(orders);
+        int rows = orderMapper.updateStatusByIds(orders, Orders.PENDING_PAYMENT, Collections.singletonList(orders.getId()));
+        if (rows == 0) {
+            Orders current = orderMapper.getById(ordersDB.getId());
+            if (Orders.CANCELLED.equals(current.getStatus()) && Orders.UN_PAID.equals(current.getPayStatus())
+                    && orderMapper.updatePaidIfCancelled(current.getId(), orders.getCheckoutTime()) > 0) {
+                log.warn("订单{}已取消后收到支付结果，申请退款", outTradeNo);
+                refundOutbox.enqueue(current);
+                publishChange(current.getId());
+                return;
+            }
+            log.info("订单{}已处理过支付结果，忽略", outTradeNo);
+            return;
+        }
+        publishChange(orders.getId());
 
         //通过websocket向客户端浏览器发送消息：type,orderId,content
         Map map=new HashMap();
@@ -251,7 +320,7 @@ public class OrderServiceImpl implements OrderService {
         map.put("content","订单号："+outTradeNo);
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);  //向客户端广播消息
+        webSocketServer.sendToAllClient(WebSocketTopic.NEW_ORDER,json);  //向客户端广播消息
 
     }
 
@@ -263,30 +332,40 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public PageResult pageQuery(int pageNum, int pageSize, Integer status) {
+        //第一页优先从最近订单缓存读取
+        Long userId = BaseContext.getCurrentId();
+        PageResult cached = recentOrderCache.get(userId,pageNum,pageSize,status);
+        if(cached!=null){
+            return cached;
+        }
+
         //设置分页
         PageHelper.startPage(pageNum,pageSize);
 
         OrdersPageQueryDTO ordersPageQueryDTO=new OrdersPageQueryDTO();
-        ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
+        ordersPageQueryDTO.setUserId(userId);
         ordersPageQueryDTO.setStatus(status);
 
         //查询历史订单
         Page<Orders> page=orderMapper.pageQuery(ordersPageQueryDTO);
 
         List<OrderVO> list=new ArrayList<>();
-        //根据订单id查询对应的订单明细，封装到VO对象中
-        if(page!=null&&page.getTotal()>0){
+        //一次查询当前页所有订单的明细，按订单id分组后封装到VO对象中
+        if(page!=null&&page.size()>0){
+            List<Long> orderIds=page.stream().map(Orders::getId).collect(Collectors.toList());
+            Map<Long,List<OrderDetail>> detailMap=orderDetailMapper.getByOrderIds(orderIds).stream()
+                    .collect(Collectors.groupingBy(OrderDetail::getOrderId));
             for (Orders orders : page) {
-                Long orderId = orders.getId();
-                List<OrderDetail> orderDetailList=orderDetailMapper.getByOrderId(orderId);
-
                 OrderVO orderVO=new OrderVO();
                 BeanUtils.copyProperties(orders,orderVO);
-                orderVO.setOrderDetailList(orderDetailList);
+                orderVO.setOrderDetailList(detailMap.getOrDefault(orders.getId(),new ArrayList<>()));
 
                 list.add(orderVO);
             }
         }
+        if(pageNum==1&&status==null&&pageSize>=orderProperties.getRecentSize()){
+            recentOrderCache.put(userId,page.getTotal(),list);
+        }
         return new PageResult(page.getTotal(),list);
     }
 
@@ -296,6 +375,12 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public OrderVO detail(Long orderId) {
+        checkOrderExists(orderId);
+        //已完成、已取消的订单不再变化，优先从缓存读取
+        OrderVO cached=terminalOrderCache.get(orderId);
+        if(cached!=null){
+            return cached;
+        }
         //根据id查询订单
         Orders orders=orderMapper.getById(orderId);
         //根据订单id查询对应的订单明细
@@ -304,6 +389,7 @@ public class OrderServiceImpl implements OrderService {
         OrderVO orderVO=new OrderVO();
         BeanUtils.copyProperties(orders,orderVO);
         orderVO.setOrderDetailList(orderDetailList);
+        terminalOrderCache.put(orderVO);
 
         return orderVO;
     }
@@ -314,6 +400,7 @@ public class OrderServiceImpl implements OrderService {
      */
     @Transactional
     public void userCancelById(Long id) throws Exception {
+        checkOrderExists(id);
         //根据id查询订单
         Orders ordersDB = orderMapper.getById(id);
         if(ordersDB==null){
@@ -329,17 +416,9 @@ public class OrderServiceImpl implements OrderService {
         Orders orders =new Orders();
         orders.setId(ordersDB.getId());
 
-        //订单已付款，需要退款
+        //订单已付款，需要退款，退款成功后支付状态修改为 退款
         if(ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)){
-            //调用微信支付退款接口
-//            weChatPayUtil.refund(
-//                    ordersDB.getNumber(), //商户订单号
-//                    ordersDB.getNumber(), //商户退款单号
-//                    new BigDecimal(0.01),//退款金额，单位 元
-//                    new BigDecimal(0.01));//原订单金额
-
-            //支付状态修改为 退款
-            orders.setPayStatus(Orders.REFUND);
+            refundOutbox.enqueue(ordersDB);
         }
 
         //更新订单状态，取消原因，取消时间
@@ -348,6 +427,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setCancelTime(LocalDateTime.now());
 
         orderMapper.update(orders);
+        publishChange(orders.getId());
     }
 
     /**
@@ -356,6 +436,7 @@ public class OrderServiceImpl implements OrderService {
      */
     @Transactional
     public void repetition(Long id) {
+        checkOrderExists(id);
         //当前登录用户id
         Long userId = BaseContext.getCurrentId();
         //根据id查询订单明细
@@ -371,7 +452,7 @@ public class OrderServiceImpl implements OrderService {
             shoppingCart.setCreateTime(LocalDateTime.now());
             shoppingCartList.add(shoppingCart);
         }
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        cartStore.addAll(userId,shoppingCartList);
     }
 
     /**
@@ -396,9 +477,10 @@ public class OrderServiceImpl implements OrderService {
             for (Orders orders : ordersList) {
                 OrderVO orderVO=new OrderVO();
                 BeanUtils.copyProperties(orders,orderVO);
-                String orderDishes=getOrderDishesStr(orders);
-                // 将订单菜品信息封装到orderVO中，并添加到orderVOList
-                orderVO.setOrderDishes(orderDishes);
+                // 订单菜品信息已在下单时写入订单，尚未回填的历史订单再根据明细拼接
+                if(orderVO.getOrderDishes()==null){
+                    orderVO.setOrderDishes(getOrderDishesStr(orders));
+                }
                 orderVOList.add(orderVO);
             }
         }
@@ -415,13 +497,7 @@ public class OrderServiceImpl implements OrderService {
         List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
 
         // 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3）
-        List<String>orderDishList=new ArrayList<>();
-        for (OrderDetail orderDetail : orderDetailList) {
-            String orderDish=orderDetail.getName()+"*"+orderDetail.getNumber();
-            orderDishList.add(orderDish);
-        }
-        // 将该订单对应的所有菜品信息拼接在一起
-        return String.join("",orderDishList);
+        return OrderSummaries.dishes(orderDetailList);
     }
 
     /**
@@ -429,6 +505,10 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public OrderStatisticsVO statistics() {
+        if (dashboardStats.isLive()) {
+            return dashboardStats.orderStatistics();
+        }
+
         // 根据状态，分别查询出待接单、待派送、派送中的订单数量
         Integer toBeConfirmed=orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
         Integer confirmed=orderMapper.countStatus(Orders.CONFIRMED);
@@ -453,6 +533,7 @@ public class OrderServiceImpl implements OrderService {
                 .build();
 
         orderMapper.update(orders);
+        publishChange(orders.getId());
     }
 
     /**
@@ -470,15 +551,9 @@ public class OrderServiceImpl implements OrderService {
 
         //支付状态
         Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-            //用户已支付，需要退款
-//            String refund = weChatPayUtil.refund(
-//                    ordersDB.getNumber(),
-//                    ordersDB.getNumber(),
-//                    new BigDecimal(0.01),
-//                    new BigDecimal(0.01));
-//            log.info("申请退款：{}", refund);
-            log.info("申请退款");
+        if (Orders.PAID.equals(payStatus)) {
+            //用户已支付，需要退款，与订单状态一同提交后由退款发件箱异步处理
+            refundOutbox.enqueue(ordersDB);
         }
         // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
         Orders orders=Orders.builder()
@@ -488,26 +563,22 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders);
+        publishChange(orders.getId());
     }
 
     /**
      * 取消订单
      * @param ordersCancelDTO
      */
+    @Transactional
     public void cancel(OrdersCancelDTO ordersCancelDTO) {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
         //支付状态
         Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-            //用户已支付，需要退款
-//            String refund = weChatPayUtil.refund(
-//                    ordersDB.getNumber(),
-//                    ordersDB.getNumber(),
-//                    new BigDecimal(0.01),
-//                    new BigDecimal(0.01));
-//            log.info("申请退款：{}", refund);
-            log.info("申请退款");
+        if (Orders.PAID.equals(payStatus)) {
+            //用户已支付，需要退款，与订单状态一同提交后由退款发件箱异步处理
+            refundOutbox.enqueue(ordersDB);
         }
         // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
         Orders orders = Orders.builder()
@@ -517,6 +588,7 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders);
+        publishChange(orders.getId());
     }
 
     /**
@@ -536,6 +608,7 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.DELIVERY_IN_PROGRESS)  // 更新订单状态,状态转为派送中
                 .build();
         orderMapper.update(orders);
+        publishChange(orders.getId());
     }
 
     /**
@@ -556,6 +629,7 @@ public class OrderServiceImpl implements OrderService {
                 .deliveryTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders);
+        publishChange(orders.getId());
     }
 
     /**
@@ -563,6 +637,7 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void reminder(Long id) {
+        checkOrderExists(id);
         // 根据id查询订单
         Orders orders = orderMapper.getById(id);
         // 校验订单是否存在
@@ -577,6 +652,24 @@ public class OrderServiceImpl implements OrderService {
         map.put("content","订单号："+ orders.getNumber());
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);  //向客户端广播消息
+        webSocketServer.sendToAllClient(WebSocketTopic.REMINDER,json);  //向客户端广播消息
+    }
+
+    /**
+     * 通过布隆过滤器拦截不存在的订单id，避免查询数据库
+     * @param orderId
+     */
+    private void checkOrderExists(Long orderId) {
+        if(!idBloomFilters.mightContain(BloomType.ORDER,orderId)){
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+    }
+
+    /**
+     * 发布订单变更事件，事务提交后刷新订单缓存
+     * @param orderId
+     */
+    private void publishChange(Long orderId) {
+        eventPublisher.publishEvent(new OrderChangeEvent(Collections.singletonList(orderId),false));
     }
 }
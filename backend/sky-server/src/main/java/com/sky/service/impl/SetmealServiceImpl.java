@@ -2,6 +2,9 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
+import com.sky.catalog.CatalogStore;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.SetmealDTO;
@@ -9,22 +12,28 @@ import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Dish;
 import com.sky.entity.Setmeal;
 import com.sky.entity.SetmealDish;
+import com.sky.event.MenuChangeEvent;
 import com.sky.exception.DeletionNotAllowedException;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
+import com.sky.search.MenuSearchIndex;
 import com.sky.service.SetmealService;
 import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class SetmealServiceImpl implements SetmealService {
@@ -37,6 +46,18 @@ public class SetmealServiceImpl implements SetmealService {
     @Autowired
     private DishMapper dishMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private IdBloomFilters idBloomFilters;
+
+    @Autowired
+    private CatalogStore catalogStore;
+
+    @Autowired
+    private MenuSearchIndex menuSearchIndex;
+
     /**
      * 新增套餐
      * @param setmealDTO
@@ -55,6 +76,12 @@ public class SetmealServiceImpl implements SetmealService {
             setmealDish.setSetmealId(setmealId);
         });
         setmealDishMapper.insertBatch(setmealDishes);
+
+        //事务提交后清理该分类的套餐缓存
+        eventPublisher.publishEvent(MenuChangeEvent.builder()
+                .setmealIds(Collections.singleton(setmealId))
+                .setmealCategoryIds(Collections.singleton(setmeal.getCategoryId()))
+                .build());
     }
 
     /**
@@ -63,8 +90,17 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public PageResult page(SetmealPageQueryDTO setmealPageQueryDTO) {
+        //按名称搜索时先通过搜索索引得到套餐id，避免like全表扫描
+        List<Long> ids = null;
+        String name = setmealPageQueryDTO.getName();
+        if(name!=null&&!name.trim().isEmpty()){
+            ids = menuSearchIndex.searchSetmealIdsByName(name);
+            if(ids.isEmpty()){
+                return new PageResult(0,new ArrayList<>());
+            }
+        }
         PageHelper.startPage(setmealPageQueryDTO.getPage(),setmealPageQueryDTO.getPageSize());
-        Page<SetmealVO> page=setmealMapper.pageQuery(setmealPageQueryDTO);
+        Page<SetmealVO> page=setmealMapper.pageQuery(setmealPageQueryDTO,ids);
         return new PageResult(page.getTotal(),page.getResult());
     }
 
@@ -74,17 +110,32 @@ public class SetmealServiceImpl implements SetmealService {
      */
     @Transactional
     public void deleteBatch(List<Long> ids) {
-        //起售中的套餐不能删除
-        for (Long id : ids) {
-            Setmeal setmeal=setmealMapper.getById(id);
-            if(setmeal.getStatus()== StatusConstant.ENABLE){
-                throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ON_SALE);
+        //一次查询出所有套餐，用于校验和获取所属分类
+        List<Setmeal> setmeals=setmealMapper.getByIds(ids);
+
+        //起售中的套餐不能删除，收集所有起售中的套餐一并提示
+        List<String> onSale=new ArrayList<>();
+        for (Setmeal setmeal : setmeals) {
+            if(StatusConstant.ENABLE.equals(setmeal.getStatus())){
+                onSale.add(setmeal.getName());
             }
         }
+        if(!onSale.isEmpty()){
+            throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ON_SALE+"："+String.join("、",onSale));
+        }
+
+        //删除前记录套餐所属的分类，用于清理缓存
+        Set<Long> categoryIds=setmeals.stream().map(Setmeal::getCategoryId).collect(Collectors.toSet());
+
         //批量删除套餐
         setmealMapper.deleteBatch(ids);
         //批量删除套餐与菜品的关联关系
         setmealDishMapper.deleteBatch(ids);
+
+        eventPublisher.publishEvent(MenuChangeEvent.builder()
+                .setmealIds(new HashSet<>(ids))
+                .setmealCategoryIds(categoryIds)
+                .build());
     }
 
     /**
@@ -109,6 +160,9 @@ public class SetmealServiceImpl implements SetmealService {
      */
     @Transactional
     public void update(SetmealDTO setmealDTO) {
+        //修改前的分类，套餐可能被移动到其他分类，新旧分类的缓存都需要清理
+        Setmeal setmealDB=setmealMapper.getById(setmealDTO.getId());
+
         //修改套餐
         Setmeal setmeal=new Setmeal();
         BeanUtils.copyProperties(setmealDTO,setmeal);
@@ -126,6 +180,16 @@ public class SetmealServiceImpl implements SetmealService {
             setmealDish.setSetmealId(setmealId);
         });
         setmealDishMapper.insertBatch(setmealDishes);
+
+        MenuChangeEvent event = MenuChangeEvent.builder().build();
+        event.getSetmealIds().add(setmealId);
+        if(setmealDB!=null){
+            event.getSetmealCategoryIds().add(setmealDB.getCategoryId());
+        }
+        if(setmealDTO.getCategoryId()!=null){
+            event.getSetmealCategoryIds().add(setmealDTO.getCategoryId());
+        }
+        eventPublisher.publishEvent(event);
     }
 
     /**
@@ -133,6 +197,7 @@ public class SetmealServiceImpl implements SetmealService {
      * @param status
      * @param id
      */
+    @Transactional
     public void startOrStop(Integer status, Long id) {
         //若套餐中有菜品停售则不能起售
         if(status==StatusConstant.ENABLE){
@@ -151,6 +216,14 @@ public class SetmealServiceImpl implements SetmealService {
                 .status(status)
                 .build();
         setmealMapper.update(setmeal);
+
+        MenuChangeEvent event = MenuChangeEvent.builder().build();
+        event.getSetmealIds().add(id);
+        Setmeal setmealDB = setmealMapper.getById(id);
+        if(setmealDB!=null){
+            event.getSetmealCategoryIds().add(setmealDB.getCategoryId());
+        }
+        eventPublisher.publishEvent(event);
     }
 
     /**
@@ -159,6 +232,12 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public List<Setmeal> list(Setmeal setmeal) {
+        //用户端按分类查询时从内存菜单数据中读取
+        if(setmeal.getCategoryId()!=null&&setmeal.getName()==null){
+            return catalogStore.snapshot().getSetmealsByCategory(setmeal.getCategoryId()).stream()
+                    .filter(s -> setmeal.getStatus()==null||setmeal.getStatus().equals(s.getStatus()))
+                    .collect(Collectors.toList());
+        }
         List<Setmeal> list = setmealMapper.list(setmeal);
         return list;
     }
@@ -169,6 +248,11 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public List<DishItemVO> getDishItemById(Long id) {
-        return setmealMapper.getDishItemBySetmealId(id);
+        //套餐不存在，直接返回
+        if(!idBloomFilters.mightContain(BloomType.SETMEAL,id)){
+            return new ArrayList<>();
+        }
+        //从内存菜单数据中读取
+        return catalogStore.snapshot().getDishItems(id);
     }
 }
@@ -1,78 +1,71 @@
 package com.sky.service.impl;
 
+import com.sky.bloom.BloomType;
+import com.sky.bloom.IdBloomFilters;
+import com.sky.cart.CartStore;
+import com.sky.catalog.CatalogStore;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
 import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
-import com.sky.exception.DeletionNotAllowedException;
-import com.sky.mapper.DishMapper;
-import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
+import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.service.ShoppingCartService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
 
     @Autowired
-    private DishMapper dishMapper;
+    private IdBloomFilters idBloomFilters;
 
     @Autowired
-    private SetmealMapper setmealMapper;
+    private CatalogStore catalogStore;
 
     /**
      * 添加购物车
      * @param shoppingCartDTO
      */
-    @Transactional
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //判断当前加入购物车的商品是否已存在
+        //商品不存在，直接拦截
+        if(shoppingCartDTO.getDishId()!=null
+                ?!idBloomFilters.mightContain(BloomType.DISH,shoppingCartDTO.getDishId())
+                :!idBloomFilters.mightContain(BloomType.SETMEAL,shoppingCartDTO.getSetmealId())){
+            throw new ShoppingCartBusinessException(MessageConstant.ITEM_NOT_FOUND);
+        }
+
         ShoppingCart shoppingCart=new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO,shoppingCart);
-        Long userId = BaseContext.getCurrentId();
-        shoppingCart.setUserId(userId);
-
-        List<ShoppingCart> list=shoppingCartMapper.list(shoppingCart);
-
-        if(list!=null&&list.size()>0){
-            //若存在，将商品数量+1
-            shoppingCart = list.get(0);
-            shoppingCart.setNumber(shoppingCart.getNumber()+1);
-            shoppingCartMapper.updateNumberById(shoppingCart);
+        //判断此次加入的商品是菜品还是套餐，从内存菜单数据中读取
+        Long dishId = shoppingCartDTO.getDishId();
+        if(dishId!=null){
+            //加入的商品是菜品
+            Dish dish = catalogStore.snapshot().getDish(dishId);
+            if(dish==null){
+                throw new ShoppingCartBusinessException(MessageConstant.ITEM_NOT_FOUND);
+            }
+            shoppingCart.setName(dish.getName());
+            shoppingCart.setImage(dish.getImage());
+            shoppingCart.setAmount(dish.getPrice());
         }else{
-            //若不存在，插入商品数据
-            //判断此次插入的商品是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            if(dishId!=null){
-                //插入的商品是菜品
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-            }else{
-                //插入的商品是套餐
-                Long setmealId = shoppingCart.getSetmealId();
-                Setmeal setmeal = setmealMapper.getById(setmealId);
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
+            //加入的商品是套餐
+            Setmeal setmeal = catalogStore.snapshot().getSetmeal(shoppingCartDTO.getSetmealId());
+            if(setmeal==null){
+                throw new ShoppingCartBusinessException(MessageConstant.ITEM_NOT_FOUND);
             }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+            shoppingCart.setName(setmeal.getName());
+            shoppingCart.setImage(setmeal.getImage());
+            shoppingCart.setAmount(setmeal.getPrice());
         }
-
+        cartStore.add(BaseContext.getCurrentId(),shoppingCart);
     }
 
     /**
@@ -81,11 +74,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     public List<ShoppingCart> showShoppingCart() {
         //获取当前微信用户的id
-        Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart=ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        return shoppingCartMapper.list(shoppingCart);
+        return cartStore.list(BaseContext.getCurrentId());
     }
 
     /**
@@ -93,8 +82,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     public void cleanShoppingCart() {
         //获取当前微信用户的id
-        Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.deleteByUserId(userId);
+        cartStore.clear(BaseContext.getCurrentId());
     }
 
     /**
@@ -102,26 +90,8 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      * @param shoppingCartDTO
      */
     public void subShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //查询商品是否存在
         ShoppingCart shoppingCart=new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO,shoppingCart);
-        Long userId = BaseContext.getCurrentId();
-        shoppingCart.setUserId(userId);
-
-        List<ShoppingCart> list=shoppingCartMapper.list(shoppingCart);
-
-        if(list!=null&&list.size()>0){
-            //若存在，判断商品数量是否大于1
-            shoppingCart = list.get(0);
-            Integer number = shoppingCart.getNumber();
-            if(number>1){
-                //若大于1，将商品数量减一
-                shoppingCart.setNumber(shoppingCart.getNumber()-1);
-                shoppingCartMapper.updateNumberById(shoppingCart);
-            }else {
-                //若等于1，删除该商品
-                shoppingCartMapper.deleteById(shoppingCart.getId());
-            }
-        }
+        cartStore.sub(BaseContext.getCurrentId(),shoppingCart);
     }
 }
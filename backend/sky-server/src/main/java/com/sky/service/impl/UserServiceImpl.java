@@ -3,6 +3,7 @@ package com.sky.service.impl;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.sky.constant.MessageConstant;
+import com.sky.dashboard.DashboardStats;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
 import com.sky.exception.LoginFailedException;
@@ -20,14 +21,15 @@ import java.util.Map;
 @Service
 public class UserServiceImpl implements UserService {
 
-    private static final String WX_LOGIN="https://api.weixin.qq.com/sns/jscode2session";
-
     @Autowired
     private WeChatProperties weChatProperties;
 
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private DashboardStats dashboardStats;
+
     /**
      * 微信登录
      * @param userLoginDTO
@@ -51,6 +53,7 @@ public class UserServiceImpl implements UserService {
                     .createTime(LocalDateTime.now())
                     .build();
             userMapper.insert(user);
+            dashboardStats.onNewUser(user.getId());
         }
 
         //返回用户对象
@@ -64,7 +67,7 @@ public class UserServiceImpl implements UserService {
         map.put("secret",weChatProperties.getSecret());
         map.put("js_code",code);
         map.put("grant_type","authorization_code");
-        String json = HttpClientUtil.doGet(WX_LOGIN, map);
+        String json = HttpClientUtil.doGet(weChatProperties.getLoginUrl(), map);
 
         //解析json对象
         JSONObject jsonObject = JSON.parseObject(json);
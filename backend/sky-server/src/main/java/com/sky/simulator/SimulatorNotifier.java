@@ -0,0 +1,162 @@
+package com.sky.simulator;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.SimulatorProperties;
+import com.sky.properties.WeChatProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.RandomStringUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟微信支付的支付成功回调
+ * 下单后延迟发送按APIv3密钥加密的回调通知，应答失败时按间隔重试，可按概率重复发送以验证回调去重
+ */
+@Component
+@Profile("simulator")
+@Slf4j
+public class SimulatorNotifier {
+
+    private static final int MAX_RETRIES = 3;
+
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+
+    @Autowired
+    private WeChatProperties weChatProperties;
+
+    @Autowired
+    private SimulatorProperties simulatorProperties;
+
+    private ScheduledExecutorService executor;
+
+    private CloseableHttpClient httpClient;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newScheduledThreadPool(simulatorProperties.getNotifyThreads(), r -> {
+            Thread thread = new Thread(r, "simulator-notify");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClient = HttpClients.custom()
+                .setMaxConnTotal(simulatorProperties.getNotifyThreads())
+                .setMaxConnPerRoute(simulatorProperties.getNotifyThreads())
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        executor.shutdownNow();
+        httpClient.close();
+    }
+
+    /**
+     * 延迟发送支付成功回调
+     * @param outTradeNo 商户订单号
+     * @param total 订单金额，单位分
+     * @param openid
+     */
+    public void paySuccess(String outTradeNo, int total, String openid) {
+        String transactionId = "4200" + RandomStringUtils.randomNumeric(24);
+        JSONObject transaction = new JSONObject();
+        transaction.put("appid", weChatProperties.getAppid());
+        transaction.put("mchid", weChatProperties.getMchid());
+        transaction.put("out_trade_no", outTradeNo);
+        transaction.put("transaction_id", transactionId);
+        transaction.put("trade_type", "JSAPI");
+        transaction.put("trade_state", "SUCCESS");
+        transaction.put("success_time", OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        JSONObject payer = new JSONObject();
+        payer.put("openid", openid);
+        transaction.put("payer", payer);
+        JSONObject amount = new JSONObject();
+        amount.put("total", total);
+        amount.put("payer_total", total);
+        amount.put("currency", "CNY");
+        transaction.put("amount", amount);
+
+        String body;
+        try {
+            body = buildNotify(transaction.toJSONString());
+        } catch (GeneralSecurityException e) {
+            log.error("模拟支付回调加密失败：{}", e.getMessage());
+            return;
+        }
+        long delay = simulatorProperties.getNotifyDelayMillis();
+        executor.schedule(() -> send(body, 0), delay, TimeUnit.MILLISECONDS);
+        if (ThreadLocalRandom.current().nextDouble() < simulatorProperties.getDuplicateNotifyRate()) {
+            executor.schedule(() -> send(body, 0), delay * 2, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 构造回调通知：{"id":...,"event_type":"TRANSACTION.SUCCESS","resource":{"ciphertext":...}}
+     */
+    private String buildNotify(String plainText) throws GeneralSecurityException {
+        String nonce = RandomStringUtils.randomAlphanumeric(12);
+        String associatedData = "transaction";
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(weChatProperties.getApiV3Key().getBytes(StandardCharsets.UTF_8), "AES"),
+                new GCMParameterSpec(128, nonce.getBytes(StandardCharsets.UTF_8)));
+        cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+        String ciphertext = Base64.getEncoder().encodeToString(cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+
+        JSONObject resource = new JSONObject();
+        resource.put("algorithm", "AEAD_AES_256_GCM");
+        resource.put("ciphertext", ciphertext);
+        resource.put("associated_data", associatedData);
+        resource.put("nonce", nonce);
+        resource.put("original_type", "transaction");
+
+        JSONObject notify = new JSONObject();
+        notify.put("id", RandomStringUtils.randomAlphanumeric(32));
+        notify.put("create_time", OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        notify.put("resource_type", "encrypt-resource");
+        notify.put("event_type", "TRANSACTION.SUCCESS");
+        notify.put("summary", "支付成功");
+        notify.put("resource", resource);
+        return notify.toJSONString();
+    }
+
+    private void send(String body, int retries) {
+        HttpPost httpPost = new HttpPost(weChatProperties.getNotifyUrl());
+        httpPost.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            EntityUtils.consume(response.getEntity());
+            if (response.getStatusLine().getStatusCode() == 200) {
+                return;
+            }
+            log.warn("支付回调应答失败：{}", response.getStatusLine());
+        } catch (IOException e) {
+            log.warn("发送支付回调失败：{}", e.getMessage());
+        }
+        if (retries < MAX_RETRIES) {
+            executor.schedule(() -> send(body, retries + 1), RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
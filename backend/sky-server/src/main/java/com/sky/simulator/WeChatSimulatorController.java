@@ -0,0 +1,141 @@
+package com.sky.simulator;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.SimulatorProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 微信登录和微信支付接口模拟器，用于离线压测
+ * 启用simulator配置后，sky.wechat.login-url和pay-base-url指向本接口，下单后自动发送支付成功回调。
+ * 各接口按配置增加响应延迟，并按概率返回系统错误
+ */
+@RestController
+@RequestMapping("/simulator")
+@Profile("simulator")
+@Slf4j
+public class WeChatSimulatorController {
+
+    @Autowired
+    private SimulatorProperties simulatorProperties;
+
+    @Autowired
+    private SimulatorNotifier simulatorNotifier;
+
+    /**
+     * 小程序登录，openid由code确定，同一code总是得到同一用户
+     * @param code
+     * @return
+     */
+    @GetMapping("/sns/jscode2session")
+    public ResponseEntity<String> jscode2session(@RequestParam("js_code") String code) throws InterruptedException {
+        JSONObject result = new JSONObject();
+        if (delayAndFail()) {
+            result.put("errcode", -1);
+            result.put("errmsg", "system error");
+        } else {
+            result.put("openid", "sim_" + code);
+            result.put("session_key", RandomStringUtils.randomAlphanumeric(24));
+        }
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * JSAPI下单，返回预支付交易会话标识，并在延迟后发送支付成功回调
+     * @param body
+     * @return
+     */
+    @PostMapping("/v3/pay/transactions/jsapi")
+    public ResponseEntity<String> jsapi(@RequestBody String body) throws InterruptedException {
+        if (delayAndFail()) {
+            return systemError();
+        }
+        JSONObject request = JSON.parseObject(body);
+        simulatorNotifier.paySuccess(request.getString("out_trade_no"),
+                request.getJSONObject("amount").getIntValue("total"),
+                request.getJSONObject("payer").getString("openid"));
+
+        JSONObject result = new JSONObject();
+        result.put("prepay_id", "wx" + RandomStringUtils.randomAlphanumeric(30));
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * 申请退款，返回退款处理中，查询退款时返回退款成功
+     * @param body
+     * @return
+     */
+    @PostMapping("/v3/refund/domestic/refunds")
+    public ResponseEntity<String> refund(@RequestBody String body) throws InterruptedException {
+        if (delayAndFail()) {
+            return systemError();
+        }
+        JSONObject request = JSON.parseObject(body);
+        JSONObject result = new JSONObject();
+        result.put("refund_id", "5030" + RandomStringUtils.randomNumeric(24));
+        result.put("out_refund_no", request.getString("out_refund_no"));
+        result.put("out_trade_no", request.getString("out_trade_no"));
+        result.put("channel", "ORIGINAL");
+        result.put("status", "PROCESSING");
+        result.put("amount", request.getJSONObject("amount"));
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * 查询单笔退款，直接返回退款成功
+     * @param outRefundNo
+     * @return
+     */
+    @GetMapping("/v3/refund/domestic/refunds/{outRefundNo}")
+    public ResponseEntity<String> queryRefund(@PathVariable String outRefundNo) throws InterruptedException {
+        if (delayAndFail()) {
+            return systemError();
+        }
+        JSONObject result = new JSONObject();
+        result.put("refund_id", "5030" + RandomStringUtils.randomNumeric(24));
+        result.put("out_refund_no", outRefundNo);
+        result.put("channel", "ORIGINAL");
+        result.put("status", "SUCCESS");
+        return json(HttpStatus.OK, result);
+    }
+
+    /**
+     * 按配置等待，返回本次是否模拟失败
+     */
+    private boolean delayAndFail() throws InterruptedException {
+        long latency = simulatorProperties.getLatencyMillis();
+        if (simulatorProperties.getLatencyJitterMillis() > 0) {
+            latency += ThreadLocalRandom.current().nextLong(simulatorProperties.getLatencyJitterMillis() + 1);
+        }
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        return ThreadLocalRandom.current().nextDouble() < simulatorProperties.getFailureRate();
+    }
+
+    private ResponseEntity<String> systemError() {
+        JSONObject result = new JSONObject();
+        result.put("code", "SYSTEM_ERROR");
+        result.put("message", "系统错误");
+        return json(HttpStatus.INTERNAL_SERVER_ERROR, result);
+    }
+
+    private static ResponseEntity<String> json(HttpStatus status, JSONObject body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body.toJSONString());
+    }
+}
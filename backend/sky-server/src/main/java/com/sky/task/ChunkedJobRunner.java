@@ -0,0 +1,83 @@
+package com.sky.task;
+
+import com.sky.properties.TaskProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 分批任务执行器
+ * 按id顺序分批取出待处理数据的id，每批执行一次批量处理，并把已处理的最大id记录到redis，
+ * 任务中断后下次从记录的位置继续，内存中只保留一批id；
+ * 在协调任务中执行时，进度按分片记录，并通过租约的防护令牌保证租约丢失后不再推进进度
+ */
+@Component
+@Slf4j
+public class ChunkedJobRunner {
+
+    private static final String CHECKPOINT_PREFIX = "task:checkpoint:";
+
+    //进度保留时间，分片数变化后旧分片的进度自动过期
+    private static final long CHECKPOINT_TTL_SECONDS = 24 * 60 * 60;
+
+    @Autowired
+    private TaskProperties taskProperties;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    /**
+     * 执行分批任务
+     * @param jobName 任务名称，用于记录进度
+     * @param fetch 根据上一批的最大id和批大小查询下一批id，id需升序
+     * @param process 处理一批id，返回实际处理的数量
+     * @return 处理的总数量
+     */
+    public int run(String jobName, BiFunction<Long, Integer, List<Long>> fetch, Function<List<Long>, Integer> process) {
+        //协调执行时按分片记录进度，并且只有仍持有租约时才能推进进度
+        JobContext context = JobContext.current();
+        String checkpointKey = CHECKPOINT_PREFIX + (context == null ? jobName : context.checkpointName());
+        String checkpoint = stringRedisTemplate.opsForValue().get(checkpointKey);
+        long lastId = checkpoint == null ? 0 : Long.parseLong(checkpoint);
+        int chunkSize = taskProperties.getChunkSize();
+        int total = 0;
+        int chunks = 0;
+
+        List<Long> ids;
+        while (!(ids = fetch.apply(lastId, chunkSize)).isEmpty()) {
+            total += process.apply(ids);
+            chunks++;
+            lastId = ids.get(ids.size() - 1);
+            if (!saveCheckpoint(context, checkpointKey, lastId)) {
+                log.warn("任务{}租约已被其他实例接管，停止执行，已处理数量：{}", jobName, total);
+                return total;
+            }
+        }
+
+        //本轮全部处理完成，清除进度，下次从头开始
+        if (context == null) {
+            stringRedisTemplate.delete(checkpointKey);
+        } else {
+            jobCoordinator.deleteIfHolder(context, checkpointKey);
+        }
+        log.info("任务{}执行完成，批次：{}，处理数量：{}", jobName, chunks, total);
+        return total;
+    }
+
+    private boolean saveCheckpoint(JobContext context, String checkpointKey, long lastId) {
+        if (context == null) {
+            stringRedisTemplate.opsForValue().set(checkpointKey, String.valueOf(lastId), CHECKPOINT_TTL_SECONDS, TimeUnit.SECONDS);
+            return true;
+        }
+        return jobCoordinator.setIfHolder(context, checkpointKey, String.valueOf(lastId), CHECKPOINT_TTL_SECONDS);
+    }
+}
@@ -0,0 +1,51 @@
+package com.sky.task;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 当前线程正在执行的协调任务信息：租约、防护令牌以及分片
+ */
+@Getter
+@AllArgsConstructor
+public class JobContext {
+
+    private static final ThreadLocal<JobContext> CURRENT = new ThreadLocal<>();
+
+    //任务名称
+    private final String jobName;
+
+    //租约key
+    private final String lockKey;
+
+    //租约value：实例id:防护令牌
+    private final String lockValue;
+
+    //防护令牌，每次抢到租约递增，旧的持有者无法再用过期的令牌写入
+    private final long fencingToken;
+
+    //分片序号
+    private final int shardIndex;
+
+    //分片总数
+    private final int shardCount;
+
+    public static JobContext current() {
+        return CURRENT.get();
+    }
+
+    public static void set(JobContext context) {
+        CURRENT.set(context);
+    }
+
+    public static void remove() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 用于记录进度的名称，分片执行时区分分片
+     */
+    public String checkpointName() {
+        return shardCount > 1 ? jobName + ":" + shardIndex + "/" + shardCount : jobName;
+    }
+}
@@ -0,0 +1,192 @@
+package com.sky.task;
+
+import com.sky.properties.TaskProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时任务协调
+ * 实例定时上报心跳，任务执行前在redis中抢占租约并获取递增的防护令牌，执行期间自动续期，结束后释放
+ */
+@Component
+@Slf4j
+public class JobCoordinator {
+
+    private static final String NODES_KEY = "job:nodes";
+    private static final String LOCK_PREFIX = "job:lock:";
+    private static final String FENCE_PREFIX = "job:fence:";
+
+    //仍持有租约时续期
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+
+    //仍持有租约时释放
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0",
+            Long.class);
+
+    //仍持有租约时写入，KEYS[2]为写入的key，ARGV[2]为值，ARGV[3]为过期秒数
+    private static final RedisScript<Long> FENCED_SET_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "redis.call('set', KEYS[2], ARGV[2], 'EX', ARGV[3]) return 1",
+            Long.class);
+
+    //仍持有租约时删除，KEYS[2]为删除的key
+    private static final RedisScript<Long> FENCED_DEL_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "redis.call('del', KEYS[2]) return 1",
+            Long.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    //租约续期线程
+    private final ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "job-lease-renew");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private TaskProperties taskProperties;
+
+    @PostConstruct
+    public void init() {
+        heartbeat();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewExecutor.shutdownNow();
+        stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+    }
+
+    /**
+     * 上报心跳
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void heartbeat() {
+        stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, System.currentTimeMillis());
+    }
+
+    /**
+     * 查询存活的实例，按实例id排序，各实例得到一致的分片顺序
+     * @return
+     */
+    public List<String> liveNodes() {
+        long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(taskProperties.getNodeTtlSeconds());
+        stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, expired);
+        Set<String> nodes = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, expired, Double.MAX_VALUE);
+        List<String> list = nodes == null ? new ArrayList<>() : new ArrayList<>(nodes);
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * 抢占任务租约，失败返回null
+     * @param jobName
+     * @param sharded 任务是否支持分片
+     * @return
+     */
+    public JobContext tryAcquire(String jobName, boolean sharded) {
+        int shardIndex = 0;
+        int shardCount = 1;
+        String lockKey = LOCK_PREFIX + jobName;
+        if (sharded && taskProperties.isShard()) {
+            List<String> nodes = liveNodes();
+            int index = nodes.indexOf(nodeId);
+            if (index < 0) {
+                //心跳尚未上报或已过期，本轮不参与
+                heartbeat();
+                return null;
+            }
+            shardIndex = index;
+            shardCount = nodes.size();
+            lockKey = lockKey + ":" + shardIndex + "/" + shardCount;
+        }
+
+        Long token = stringRedisTemplate.opsForValue().increment(FENCE_PREFIX + jobName);
+        String lockValue = nodeId + ":" + token;
+        Boolean success = stringRedisTemplate.opsForValue()
+                .setIfAbsent(lockKey, lockValue, taskProperties.getLeaseSeconds(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(success)) {
+            return null;
+        }
+        return new JobContext(jobName, lockKey, lockValue, token, shardIndex, shardCount);
+    }
+
+    /**
+     * 定期续期租约，直到返回的任务被取消
+     * @param context
+     * @return
+     */
+    public ScheduledFuture<?> scheduleRenewal(JobContext context) {
+        long period = TimeUnit.SECONDS.toMillis(taskProperties.getLeaseSeconds()) / 3;
+        return renewExecutor.scheduleAtFixedRate(() -> {
+            try {
+                if (!renew(context)) {
+                    log.warn("任务{}租约已丢失，令牌：{}", context.getJobName(), context.getFencingToken());
+                }
+            } catch (Exception e) {
+                log.error("任务{}租约续期失败", context.getJobName(), e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean renew(JobContext context) {
+        Long result = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(context.getLockKey()),
+                context.getLockValue(), String.valueOf(TimeUnit.SECONDS.toMillis(taskProperties.getLeaseSeconds())));
+        return result != null && result == 1;
+    }
+
+    public void release(JobContext context) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(context.getLockKey()), context.getLockValue());
+    }
+
+    /**
+     * 仍持有租约时写入，租约已被其他实例接管时放弃写入并返回false
+     * @param context
+     * @param key
+     * @param value
+     * @param ttlSeconds
+     * @return
+     */
+    public boolean setIfHolder(JobContext context, String key, String value, long ttlSeconds) {
+        Long result = stringRedisTemplate.execute(FENCED_SET_SCRIPT, Arrays.asList(context.getLockKey(), key),
+                context.getLockValue(), value, String.valueOf(ttlSeconds));
+        return result != null && result == 1;
+    }
+
+    /**
+     * 仍持有租约时删除
+     * @param context
+     * @param key
+     * @return
+     */
+    public boolean deleteIfHolder(JobContext context, String key) {
+        Long result = stringRedisTemplate.execute(FENCED_DEL_SCRIPT, Arrays.asList(context.getLockKey(), key),
+                context.getLockValue());
+        return result != null && result == 1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.sky.task;
+
+import com.sky.annotation.DistributedJob;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderSummaries;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 回填历史订单的摘要字段
+ */
+@Component
+@Slf4j
+public class OrderSummaryBackfillTask {
+
+    //每批处理的订单数量
+    private static final int BATCH_SIZE = 500;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+
+    /**
+     * 按id顺序分批回填未生成摘要的订单，全部回填后每次只执行一次空查询
+     */
+    @Scheduled(cron = "0 0 4 * * ? ")  //每天凌晨4点触发一次
+    @DistributedJob
+    public void backfill(){
+        log.info("回填订单摘要，{}", LocalDateTime.now());
+        long lastId = 0;
+        int total = 0;
+        List<Long> orderIds;
+        while (!(orderIds = orderMapper.listIdsWithoutSummaryAfter(lastId, BATCH_SIZE)).isEmpty()) {
+            //一次查询这批订单的全部明细，按订单id分组
+            Map<Long, List<OrderDetail>> detailMap = orderDetailMapper.getByOrderIds(orderIds).stream()
+                    .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+            for (Long orderId : orderIds) {
+                Orders orders = Orders.builder().id(orderId).build();
+                OrderSummaries.apply(orders, detailMap.getOrDefault(orderId, new ArrayList<>()));
+                orderMapper.updateSummary(orders);
+            }
+            total += orderIds.size();
+            lastId = orderIds.get(orderIds.size() - 1);
+        }
+        log.info("订单摘要回填完成，数量：{}", total);
+    }
+}
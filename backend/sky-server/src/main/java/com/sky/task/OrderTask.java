@@ -1,14 +1,16 @@
 package com.sky.task;
 
+import com.sky.annotation.DistributedJob;
 import com.sky.entity.Orders;
+import com.sky.event.OrderChangeEvent;
 import com.sky.mapper.OrderMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @Component
 @Slf4j
@@ -17,44 +19,65 @@ public class OrderTask {
     @Autowired
     private OrderMapper orderMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ChunkedJobRunner chunkedJobRunner;
+
     /**
      * 处理支付超时订单
      */
     @Scheduled(cron = "0 * * * * ? ")  //每隔一分钟触发一次
+    @DistributedJob(sharded = true)
     public void processTimeoutOrder(){
         log.info("处理超时支付订单,{}", LocalDateTime.now());
 
         LocalDateTime time = LocalDateTime.now().plusMinutes(-15);
 
-        //查询处于待支付状态，并且超过15min未支付的订单
-        List<Orders> ordersList=orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT,time);
-
-        if(ordersList!=null&&ordersList.size()>0){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason("订单支付超时，已取消");
-                orders.setCancelTime(LocalDateTime.now());
-                orderMapper.update(orders);
-            }
-        }
+        //分批查询处于待支付状态，并且超过15min未支付的订单，每批执行一次批量取消
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason("订单支付超时，已取消")
+                .cancelTime(LocalDateTime.now())
+                .build();
+        transition("processTimeoutOrder", Orders.PENDING_PAYMENT, time, orders);
     }
 
     /**
      * 处理一直处于派送中的订单
      */
     @Scheduled(cron = "0 0 1 * * ? ")  //每天凌晨1点触发一次
+    @DistributedJob(sharded = true)
     public void processDeliveryOrder(){
         log.info("处理一直处于派送中的订单，{}",LocalDateTime.now());
         LocalDateTime time = LocalDateTime.now().plusHours(-1);
 
-        //查询处于派送中的上一个工作日的订单
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, time);
+        //分批查询处于派送中的上一个工作日的订单，每批执行一次批量完成
+        Orders orders = Orders.builder()
+                .status(Orders.COMPLETED)
+                .build();
+        transition("processDeliveryOrder", Orders.DELIVERY_IN_PROGRESS, time, orders);
+    }
 
-        if(ordersList!=null&&ordersList.size()>0){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
-            }
-        }
+    /**
+     * 将指定状态、下单时间早于指定时间的订单分批流转到新状态
+     * @param jobName
+     * @param fromStatus 原状态
+     * @param time
+     * @param orders 新状态及需要一并修改的字段
+     */
+    private void transition(String jobName, Integer fromStatus, LocalDateTime time, Orders orders) {
+        //多实例分片执行时只处理本实例的分片
+        JobContext context = JobContext.current();
+        int shardCount = context == null ? 1 : context.getShardCount();
+        int shardIndex = context == null ? 0 : context.getShardIndex();
+        chunkedJobRunner.run(jobName,
+                (lastId, size) -> orderMapper.listIdsByStatusAndOrderTimeLT(fromStatus, time, lastId, size, shardCount, shardIndex),
+                ids -> {
+                    int count = orderMapper.updateStatusByIds(orders, fromStatus, ids);
+                    eventPublisher.publishEvent(new OrderChangeEvent(ids, false));
+                    return count;
+                });
     }
 }
@@ -0,0 +1,46 @@
+package com.sky.task;
+
+import com.sky.annotation.DistributedJob;
+import com.sky.pay.Reconciliation;
+import com.sky.properties.PayProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+/**
+ * 每日支付对账
+ */
+@Component
+@Slf4j
+public class ReconciliationTask {
+
+    @Autowired
+    private Reconciliation reconciliation;
+
+    @Autowired
+    private PayProperties payProperties;
+
+    /**
+     * 对账前一日的交易账单，账单文件为账单目录下的yyyy-MM-dd.csv
+     */
+    @Scheduled(cron = "0 30 10 * * ? ")  //每天上午10点半触发一次，微信支付在10点前生成前一日账单
+    @DistributedJob
+    public void reconcileYesterday() throws Exception {
+        if (payProperties.getBillDir() == null) {
+            return;
+        }
+        LocalDate billDate = LocalDate.now().minusDays(1);
+        Path bill = Paths.get(payProperties.getBillDir(), billDate + ".csv");
+        if (!Files.exists(bill)) {
+            log.warn("{}的交易账单不存在：{}", billDate, bill);
+            return;
+        }
+        reconciliation.reconcile(billDate, bill);
+    }
+}
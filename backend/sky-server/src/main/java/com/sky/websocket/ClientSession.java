@@ -0,0 +1,187 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 客户端会话
+ * 每个会话有独立的有界发送队列，同一时刻只有一条异步发送在进行，发送完成后继续发送队列中的下一条；
+ * 队列已满说明客户端消费过慢，断开该会话，避免拖慢其他客户端；
+ * 收到客户端的pong或消息时刷新活跃时间，长时间不活跃的会话由WebSocketSessions断开
+ */
+@Slf4j
+public class ClientSession {
+
+    private final String sid;
+
+    private final Session session;
+
+    private final Queue<String> queue;
+
+    //是否有正在进行的异步发送
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    //订阅的主题
+    private volatile Set<String> topics;
+
+    //是否合并发送
+    private final boolean batch;
+
+    private final WebSocketMetrics metrics;
+
+    //最近一次收到客户端pong或消息的时间
+    private volatile long lastActive = System.currentTimeMillis();
+
+    public ClientSession(String sid, Session session, int maxQueueDepth, Set<String> topics, boolean batch,
+                         WebSocketMetrics metrics) {
+        this.sid = sid;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(maxQueueDepth);
+        this.topics = topics;
+        this.batch = batch;
+        this.metrics = metrics;
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    public void setTopics(Set<String> topics) {
+        this.topics = topics;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public boolean subscribes(String topic) {
+        return topics.contains(topic);
+    }
+
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * 刷新活跃时间
+     */
+    public void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * 发送ping，浏览器会自动回复pong
+     * ping与消息共用发送标记，有发送正在进行时跳过本次，避免与异步发送并发写入
+     */
+    public void ping() {
+        if (closed || !sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+        } catch (Exception e) {
+            log.warn("向客户端{}发送ping失败：{}", sid, e.getMessage());
+            sending.set(false);
+            close(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "ping failed");
+            return;
+        }
+        sending.set(false);
+        trySend();
+    }
+
+    /**
+     * 消息加入发送队列
+     * @param message
+     * @return 队列已满时返回false
+     */
+    public boolean enqueue(String message) {
+        if (closed) {
+            return false;
+        }
+        if (!queue.offer(message)) {
+            return false;
+        }
+        trySend();
+        return true;
+    }
+
+    /**
+     * 没有正在进行的发送时，取出队首消息异步发送
+     */
+    private void trySend() {
+        while (!closed && sending.compareAndSet(false, true)) {
+            String message = queue.poll();
+            if (message == null) {
+                sending.set(false);
+                //释放标记后可能有新消息入队，再检查一次
+                if (queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                session.getAsyncRemote().sendText(message, result -> {
+                    sending.set(false);
+                    if (!result.isOK()) {
+                        log.warn("向客户端{}发送消息失败：{}", sid, result.getException().getMessage());
+                        metrics.recordDropped(1);
+                        close(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "send failed");
+                        return;
+                    }
+                    metrics.recordSend(System.nanoTime() - start);
+                    trySend();
+                });
+            } catch (Exception e) {
+                sending.set(false);
+                log.warn("向客户端{}发送消息失败：{}", sid, e.getMessage());
+                metrics.recordDropped(1);
+                close(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "send failed");
+            }
+            return;
+        }
+    }
+
+    /**
+     * 关闭会话并丢弃未发送的消息
+     * @param code
+     * @param reason
+     */
+    public void close(CloseReason.CloseCode code, String reason) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        metrics.recordDropped(queue.size());
+        queue.clear();
+        try {
+            if (session.isOpen()) {
+                session.close(new CloseReason(code, reason));
+            }
+        } catch (IOException e) {
+            log.warn("关闭客户端{}会话失败：{}", sid, e.getMessage());
+        }
+    }
+}
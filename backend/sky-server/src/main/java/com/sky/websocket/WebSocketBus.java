@@ -0,0 +1,126 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * WebSocket集群广播
+ * 消息分配全局递增的序号后写入redis中的补发缓冲区并发布到对应主题的频道，各实例收到后发送给本实例订阅了该主题的会话；
+ * 客户端重连时携带最后收到的序号，可从缓冲区补发断线期间的消息；
+ * 待补发的消息超过会话发送队列的一半时不再逐条补发，改为发送resync消息，由客户端重新查询全量数据
+ */
+@Component
+@Slf4j
+public class WebSocketBus implements MessageListener {
+
+    //按主题区分频道：sky:ws:broadcast:主题
+    public static final String CHANNEL_PREFIX = "sky:ws:broadcast:";
+
+    private static final String SEQ_KEY = "ws:seq";
+    private static final String REPLAY_KEY = "ws:replay";
+
+    //写入补发缓冲区、裁剪到指定数量并发布，ARGV依次为序号、消息、保留数量
+    private static final RedisScript<Long> PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('zadd', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('zremrangebyrank', KEYS[1], 0, -tonumber(ARGV[3]) - 1) " +
+            "return redis.call('publish', KEYS[2], ARGV[2])", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private WebSocketSessions sessions;
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new PatternTopic(CHANNEL_PREFIX + "*"));
+    }
+
+    /**
+     * 向所有实例订阅了该主题的客户端广播
+     * @param topic
+     * @param message json格式的消息，发送时增加seq、topic字段
+     */
+    public void publish(String topic, String message) {
+        try {
+            Long seq = stringRedisTemplate.opsForValue().increment(SEQ_KEY);
+            JSONObject json = JSONObject.parseObject(message);
+            json.put("seq", seq);
+            json.put("topic", topic);
+            stringRedisTemplate.execute(PUBLISH_SCRIPT, Arrays.asList(REPLAY_KEY, CHANNEL_PREFIX + topic),
+                    String.valueOf(seq), json.toJSONString(), String.valueOf(webSocketProperties.getReplaySize()));
+        } catch (Exception e) {
+            //redis不可用时至少通知本实例的客户端
+            log.error("广播消息发布失败，仅发送给本实例客户端：{}", message, e);
+            sessions.broadcast(topic, message);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        sessions.broadcast(channel.substring(CHANNEL_PREFIX.length()), new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 补发序号大于lastSeq的消息
+     * 消息过多时一次性入队会超出会话的发送队列并导致会话被断开，此时改为发送resync消息：
+     * {"type":"resync","seq":最新序号}，客户端收到后重新查询全量数据，之后从该序号继续接收
+     * @param sid
+     * @param lastSeq 客户端最后收到的序号
+     */
+    public void replay(String sid, long lastSeq) {
+        Set<String> messages = stringRedisTemplate.opsForZSet().rangeByScore(REPLAY_KEY, lastSeq + 1, Double.MAX_VALUE);
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ClientSession clientSession = sessions.get(sid);
+        if (clientSession == null) {
+            return;
+        }
+        //只补发客户端订阅的主题
+        List<String> matched = new ArrayList<>();
+        long latestSeq = lastSeq;
+        for (String message : messages) {
+            JSONObject json = JSONObject.parseObject(message);
+            latestSeq = Math.max(latestSeq, json.getLongValue("seq"));
+            if (clientSession.subscribes(json.getString("topic"))) {
+                matched.add(message);
+            }
+        }
+        //为补发期间的实时广播预留一半队列
+        if (matched.size() > webSocketProperties.getMaxQueueDepth() / 2) {
+            JSONObject resync = new JSONObject();
+            resync.put("type", "resync");
+            resync.put("seq", latestSeq);
+            sessions.sendTo(sid, resync.toJSONString());
+            log.info("客户端{}待补发{}条消息，超出补发上限，通知重新同步", sid, matched.size());
+            return;
+        }
+        matched.forEach(message -> sessions.sendTo(sid, message));
+        log.info("向客户端{}补发{}条消息", sid, matched.size());
+    }
+}
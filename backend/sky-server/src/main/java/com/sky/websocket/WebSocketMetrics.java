@@ -0,0 +1,88 @@
+package com.sky.websocket;
+
+import com.sky.vo.WebSocketMetricsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket连接指标：当前连接数、发送耗时、丢弃的消息数，定时输出到日志，也可通过管理端接口查询
+ */
+@Component
+@Slf4j
+public class WebSocketMetrics {
+
+    @Autowired
+    @Lazy
+    private WebSocketSessions sessions;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder reaped = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * 记录一次发送完成的耗时
+     * @param nanos
+     */
+    public void recordSend(long nanos) {
+        sent.increment();
+        sendNanos.add(nanos);
+        maxSendNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * 记录丢弃的消息
+     * @param count
+     */
+    public void recordDropped(long count) {
+        if (count > 0) {
+            dropped.add(count);
+        }
+    }
+
+    public void recordReaped() {
+        reaped.increment();
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * 查询当前指标
+     * @return
+     */
+    public WebSocketMetricsVO snapshot() {
+        long count = sent.sum();
+        return WebSocketMetricsVO.builder()
+                .activeSessions(sessions.size())
+                .sentMessages(count)
+                .avgSendMillis(count == 0 ? 0.0 : sendNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1))
+                .maxSendMillis(TimeUnit.NANOSECONDS.toMillis(maxSendNanos.get()))
+                .droppedMessages(dropped.sum())
+                .reapedSessions(reaped.sum())
+                .errorSessions(errors.sum())
+                .build();
+    }
+
+    /**
+     * 每分钟输出一次指标，最大发送耗时按分钟统计
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void report() {
+        WebSocketMetricsVO metrics = snapshot();
+        maxSendNanos.set(0);
+        if (metrics.getActiveSessions() > 0 || metrics.getDroppedMessages() > 0) {
+            log.info("WebSocket指标：{}", metrics);
+        }
+    }
+}
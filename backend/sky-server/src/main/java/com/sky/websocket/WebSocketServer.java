@@ -1,33 +1,75 @@
 package com.sky.websocket;
 
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * WebSocket服务
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    //端点实例由容器为每个连接单独创建，会话管理通过静态字段共享
+    private static WebSocketSessions sessions;
+
+    private static WebSocketBus bus;
+
+    private static WebSocketMetrics metrics;
+
+    @Autowired
+    public void setSessions(WebSocketSessions sessions) {
+        WebSocketServer.sessions = sessions;
+    }
+
+    @Autowired
+    public void setBus(WebSocketBus bus) {
+        WebSocketServer.bus = bus;
+    }
+
+    @Autowired
+    public void setMetrics(WebSocketMetrics metrics) {
+        WebSocketServer.metrics = metrics;
+    }
 
     /**
      * 连接建立成功调用的方法
+     * 可选参数：topics 订阅的主题，逗号分隔，默认new-order,reminder；batch=true 合并发送；lastSeq 重连时补发断线期间的消息
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        Map<String, List<String>> params = session.getRequestParameterMap();
+        List<String> topics = params.get("topics");
+        List<String> batch = params.get("batch");
+        sessions.add(sid, session,
+                topics == null || topics.isEmpty() ? WebSocketTopic.DEFAULT_TOPICS : parseTopics(topics.get(0)),
+                batch != null && !batch.isEmpty() && Boolean.parseBoolean(batch.get(0)));
+
+        List<String> lastSeq = params.get("lastSeq");
+        if (lastSeq != null && !lastSeq.isEmpty()) {
+            try {
+                bus.replay(sid, Long.parseLong(lastSeq.get(0)));
+            } catch (NumberFormatException e) {
+                log.warn("客户端{}的lastSeq参数无效：{}", sid, lastSeq.get(0));
+            }
+        }
     }
 
     /**
@@ -37,7 +79,41 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
+        ClientSession clientSession = sessions.get(sid);
+        if (clientSession != null) {
+            clientSession.touch();
+        }
+        //修改订阅：{"action":"subscribe","topics":"new-order,stats"}
+        try {
+            JSONObject json = JSONObject.parseObject(message);
+            if (clientSession != null && "subscribe".equals(json.getString("action"))) {
+                clientSession.setTopics(parseTopics(json.getString("topics")));
+            }
+        } catch (Exception e) {
+            log.warn("无法解析客户端{}的消息：{}", sid, message);
+        }
+    }
+
+    /**
+     * 收到客户端对心跳ping的回复
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, @PathParam("sid") String sid) {
+        ClientSession clientSession = sessions.get(sid);
+        if (clientSession != null) {
+            clientSession.touch();
+        }
+    }
+
+    /**
+     * 连接出错时关闭并移除会话，不依赖onClose被调用
+     */
+    @OnError
+    public void onError(Session session, Throwable error, @PathParam("sid") String sid) {
+        log.warn("客户端{}连接出错：{}", sid, error.getMessage());
+        metrics.recordError();
+        sessions.close(sid, session, "error");
     }
 
     /**
@@ -46,26 +122,31 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        sessions.remove(sid, session);
     }
 
     /**
-     * 群发
+     * 群发，消息经redis发布到所有实例，只发送给订阅了该主题的客户端，带有递增的seq字段
      *
+     * @param topic
      * @param message
      */
-    public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+    public void sendToAllClient(String topic, String message) {
+        bus.publish(topic, message);
+    }
+
+    private static Set<String> parseTopics(String topics) {
+        Set<String> set = new HashSet<>();
+        if (topics != null) {
+            for (String topic : topics.split(",")) {
+                if (!topic.trim().isEmpty()) {
+                    set.add(topic.trim());
+                }
             }
         }
+        return Collections.unmodifiableSet(set);
     }
 
 }
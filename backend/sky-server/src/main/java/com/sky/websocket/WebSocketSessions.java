@@ -0,0 +1,251 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket会话管理
+ * 会话保存在并发容器中；广播由单独的分发线程完成，调用方只负责提交消息，不会被客户端的网络状况阻塞。
+ * 消息只发送给订阅了对应主题的会话；开启合并的会话在合并窗口内收到的消息合并为一帧，
+ * 订阅主题相同的会话共用同一帧，每条消息只编码一次。
+ * 定时向所有会话发送ping，超过空闲时间未收到pong或消息的会话视为半开连接，关闭并移除
+ */
+@Component
+@Slf4j
+public class WebSocketSessions {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    @Autowired
+    private WebSocketMetrics metrics;
+
+    //存放会话对象
+    private final Map<String, ClientSession> sessionMap = new ConcurrentHashMap<>();
+
+    //广播分发线程，队列已满时丢弃新消息
+    private ThreadPoolExecutor dispatcher;
+
+    //定时触发合并发送和心跳
+    private ScheduledExecutorService timer;
+
+    //合并窗口内待发送的消息，只在分发线程中访问
+    private final List<TopicMessage> pending = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        dispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(webSocketProperties.getDispatcherQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "websocket-dispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (r, executor) -> {
+                    log.warn("广播消息过多，丢弃本条消息");
+                    metrics.recordDropped(1);
+                });
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "websocket-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = webSocketProperties.getCoalesceMillis();
+        timer.scheduleAtFixedRate(() -> dispatcher.execute(this::flushBatch), window, window, TimeUnit.MILLISECONDS);
+        long heartbeat = webSocketProperties.getHeartbeatMillis();
+        timer.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timer.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    /**
+     * 注册会话，同一sid重复连接时关闭旧会话
+     * @param sid
+     * @param session
+     * @param topics 订阅的主题
+     * @param batch 是否合并发送
+     */
+    public void add(String sid, Session session, Set<String> topics, boolean batch) {
+        ClientSession old = sessionMap.put(sid,
+                new ClientSession(sid, session, webSocketProperties.getMaxQueueDepth(), topics, batch, metrics));
+        if (old != null) {
+            old.close(CloseReason.CloseCodes.NORMAL_CLOSURE, "replaced");
+        }
+    }
+
+    /**
+     * 移除会话，仅当sid对应的仍是该会话时移除
+     * @param sid
+     * @param session
+     */
+    public void remove(String sid, Session session) {
+        sessionMap.computeIfPresent(sid, (k, v) -> v.getSession() == session ? null : v);
+    }
+
+    /**
+     * 关闭并移除会话，用于连接出错时清理
+     * @param sid
+     * @param session
+     * @param reason
+     */
+    public void close(String sid, Session session, String reason) {
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession != null && clientSession.getSession() == session) {
+            clientSession.close(CloseReason.CloseCodes.CLOSED_ABNORMALLY, reason);
+        }
+        remove(sid, session);
+    }
+
+    public ClientSession get(String sid) {
+        return sessionMap.get(sid);
+    }
+
+    public int size() {
+        return sessionMap.size();
+    }
+
+    /**
+     * 异步发送给指定会话
+     * @param sid
+     * @param message
+     */
+    public void sendTo(String sid, String message) {
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession != null) {
+            send(clientSession, message);
+        }
+    }
+
+    /**
+     * 异步群发本实例订阅了该主题的会话
+     * @param topic
+     * @param message 已编码的消息，所有会话共用
+     */
+    public void broadcast(String topic, String message) {
+        dispatcher.execute(() -> {
+            boolean hasBatch = false;
+            for (ClientSession clientSession : sessionMap.values()) {
+                if (!clientSession.subscribes(topic)) {
+                    continue;
+                }
+                if (clientSession.isBatch()) {
+                    hasBatch = true;
+                } else {
+                    send(clientSession, message);
+                }
+            }
+            //有开启合并的会话订阅了该主题，留到窗口结束时合并发送
+            if (hasBatch) {
+                pending.add(new TopicMessage(topic, message));
+            }
+        });
+    }
+
+    /**
+     * 断开空闲超时的会话，向其余会话发送ping
+     */
+    private void heartbeat() {
+        long deadline = System.currentTimeMillis() - webSocketProperties.getIdleTimeoutMillis();
+        for (ClientSession clientSession : sessionMap.values()) {
+            try {
+                if (clientSession.isClosed() || !clientSession.getSession().isOpen()) {
+                    remove(clientSession.getSid(), clientSession.getSession());
+                } else if (clientSession.getLastActive() < deadline) {
+                    log.info("客户端{}空闲超时，断开连接", clientSession.getSid());
+                    metrics.recordReaped();
+                    clientSession.close(CloseReason.CloseCodes.GOING_AWAY, "idle timeout");
+                    remove(clientSession.getSid(), clientSession.getSession());
+                } else {
+                    clientSession.ping();
+                }
+            } catch (Exception e) {
+                log.warn("客户端{}心跳检查失败：{}", clientSession.getSid(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 合并窗口结束，按订阅主题分组，每组拼接一帧后发送给组内所有会话
+     */
+    private void flushBatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Set<String>, String> frames = new HashMap<>();
+        for (ClientSession clientSession : sessionMap.values()) {
+            if (!clientSession.isBatch()) {
+                continue;
+            }
+            String frame = frames.computeIfAbsent(clientSession.getTopics(), this::buildFrame);
+            if (frame != null) {
+                send(clientSession, frame);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * 拼接合并帧：{"type":"batch","messages":[...]}，直接拼接已编码的消息，不再重新编码
+     */
+    private String buildFrame(Set<String> topics) {
+        StringBuilder sb = new StringBuilder("{\"type\":\"batch\",\"messages\":[");
+        int count = 0;
+        for (TopicMessage topicMessage : pending) {
+            if (!topics.contains(topicMessage.topic)) {
+                continue;
+            }
+            if (count++ > 0) {
+                sb.append(',');
+            }
+            sb.append(topicMessage.message);
+        }
+        return count == 0 ? null : sb.append("]}").toString();
+    }
+
+    /**
+     * 加入会话的发送队列，队列已满时断开该会话
+     */
+    private void send(ClientSession clientSession, String message) {
+        if (clientSession.enqueue(message)) {
+            return;
+        }
+        log.warn("客户端{}消费过慢，断开连接", clientSession.getSid());
+        metrics.recordDropped(1);
+        clientSession.close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "too slow");
+        remove(clientSession.getSid(), clientSession.getSession());
+    }
+
+    private static class TopicMessage {
+
+        private final String topic;
+
+        private final String message;
+
+        TopicMessage(String topic, String message) {
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+}
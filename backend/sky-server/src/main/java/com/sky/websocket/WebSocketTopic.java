@@ -0,0 +1,28 @@
+package com.sky.websocket;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * WebSocket消息主题
+ */
+public class WebSocketTopic {
+
+    //来单提醒
+    public static final String NEW_ORDER = "new-order";
+
+    //客户催单
+    public static final String REMINDER = "reminder";
+
+    //运营数据
+    public static final String STATS = "stats";
+
+    //未指定订阅主题的客户端默认接收的主题，与原有管理端页面保持一致
+    public static final Set<String> DEFAULT_TOPICS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList(NEW_ORDER, REMINDER)));
+
+    private WebSocketTopic() {
+    }
+}
@@ -0,0 +1,111 @@
+package com.sky.order;
+
+import com.sky.catalog.CatalogSnapshot;
+import com.sky.catalog.CatalogStore;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 服务端计价与小程序计价一致：总金额 = 商品金额 + 配送费6元 + 每份商品1元打包费
+ */
+class OrderPricerTest {
+
+    private final OrderPricer orderPricer = new OrderPricer();
+
+    private final CatalogSnapshot snapshot = mock(CatalogSnapshot.class);
+
+    @BeforeEach
+    void setUp() {
+        CatalogStore catalogStore = mock(CatalogStore.class);
+        when(catalogStore.snapshot()).thenReturn(snapshot);
+        when(snapshot.getDish(1L)).thenReturn(Dish.builder().id(1L).name("宫保鸡丁")
+                .price(new BigDecimal("19.90")).status(StatusConstant.ENABLE).build());
+        when(snapshot.getDish(2L)).thenReturn(Dish.builder().id(2L).name("米饭")
+                .price(new BigDecimal("2.00")).status(StatusConstant.DISABLE).build());
+        when(snapshot.getSetmeal(1L)).thenReturn(Setmeal.builder().id(1L).name("双人套餐")
+                .price(new BigDecimal("58.80")).status(StatusConstant.ENABLE).build());
+
+        ReflectionTestUtils.setField(orderPricer, "catalogStore", catalogStore);
+        ReflectionTestUtils.setField(orderPricer, "orderProperties", new OrderProperties());
+    }
+
+    private static ShoppingCart dish(long dishId, int number) {
+        return ShoppingCart.builder().dishId(dishId).number(number).build();
+    }
+
+    private static ShoppingCart setmeal(long setmealId, int number) {
+        return ShoppingCart.builder().setmealId(setmealId).number(number).build();
+    }
+
+    /**
+     * 小程序的计算方式：orderDishPrice + 6 + orderDishNumber
+     */
+    private static BigDecimal miniProgramTotal(List<ShoppingCart> carts, double... prices) {
+        double orderDishPrice = 0;
+        int orderDishNumber = 0;
+        for (int i = 0; i < carts.size(); i++) {
+            orderDishPrice += prices[i] * carts.get(i).getNumber();
+            orderDishNumber += carts.get(i).getNumber();
+        }
+        return new BigDecimal(String.valueOf(orderDishPrice + 6 + orderDishNumber));
+    }
+
+    @Test
+    void matchesMiniProgramTotal() {
+        List<ShoppingCart> carts = Arrays.asList(dish(1, 3), setmeal(1, 2));
+        PricedOrder pricedOrder = orderPricer.price(carts);
+
+        assertEquals(5, pricedOrder.getItemCount());
+        assertEquals(3 * 1990 + 2 * 5880, pricedOrder.getItemCents());
+        assertEquals(500, pricedOrder.getPackCents());
+        assertEquals(600, pricedOrder.getDeliveryCents());
+        assertEquals(new BigDecimal("188.30"), pricedOrder.getAmount());
+        assertEquals(new BigDecimal("19.90"), pricedOrder.getDetails().get(0).getAmount());
+
+        //小程序按浮点数计算，金额可能带有多余小数位，四舍五入到分后一致
+        BigDecimal clientAmount = miniProgramTotal(carts, 19.9, 58.8);
+        orderPricer.verify(pricedOrder, clientAmount, 5);
+    }
+
+    @Test
+    void rejectsMismatchedClientAmount() {
+        PricedOrder pricedOrder = orderPricer.price(Arrays.asList(dish(1, 1)));
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> orderPricer.verify(pricedOrder, new BigDecimal("26.80"), 1));
+        assertEquals(MessageConstant.ORDER_AMOUNT_MISMATCH, e.getMessage());
+        //总金额一致但打包费不一致
+        assertThrows(OrderBusinessException.class,
+                () -> orderPricer.verify(pricedOrder, new BigDecimal("26.90"), 2));
+        assertThrows(OrderBusinessException.class, () -> orderPricer.verify(pricedOrder, null, 1));
+
+        orderPricer.verify(pricedOrder, new BigDecimal("26.90"), 1);
+    }
+
+    @Test
+    void rejectsItemsNotOnSale() {
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> orderPricer.price(Arrays.asList(dish(1, 1), dish(2, 1))));
+        assertEquals("米饭" + MessageConstant.ITEM_NOT_ON_SALE, e.getMessage());
+
+        e = assertThrows(OrderBusinessException.class, () -> orderPricer.price(Arrays.asList(dish(3, 1))));
+        assertEquals(MessageConstant.ITEM_NOT_FOUND, e.getMessage());
+    }
+}
@@ -0,0 +1,131 @@
+package com.sky.order;
+
+import com.sky.bloom.IdBloomFilters;
+import com.sky.cart.CartStore;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 下单吞吐量对比：逐单提交与批量提交
+ * 数据库用mock的mapper代替，每个事务的提交耗时用串行的1ms等待模拟（每次提交都要刷一次redo日志），
+ * 结果只反映两种方式事务数量的差异，不代表真实数据库的吞吐量。使用 mvn test -Pbenchmark 执行
+ */
+@Slf4j
+@Tag("benchmark")
+class OrderSubmitPipelineBenchmarkTest {
+
+    private static final int THREADS = 32;
+    private static final int ORDERS_PER_THREAD = 100;
+    private static final long COMMIT_MILLIS = 1;
+
+    //模拟的日志设备，同一时刻只能有一个事务提交
+    private final Object logDevice = new Object();
+
+    private final AtomicLong ids = new AtomicLong();
+
+    //模拟的事务提交次数
+    private final AtomicInteger commits = new AtomicInteger();
+
+    @Test
+    void groupCommitThroughput() throws Exception {
+        //预热
+        run(false, 10);
+        run(true, 10);
+
+        int before = commits.get();
+        double single = run(false, ORDERS_PER_THREAD);
+        int singleCommits = commits.get() - before;
+
+        before = commits.get();
+        double grouped = run(true, ORDERS_PER_THREAD);
+        int groupedCommits = commits.get() - before;
+
+        log.info("下单吞吐量（{}线程，每次提交{}ms）：逐单提交 {}单/秒，事务{}次；批量提交 {}单/秒，事务{}次，提升 {}倍",
+                THREADS, COMMIT_MILLIS, Math.round(single), singleCommits, Math.round(grouped), groupedCommits,
+                String.format("%.2f", grouped / single));
+        assertEquals(THREADS * ORDERS_PER_THREAD, singleCommits);
+        assertTrue(groupedCommits <= singleCommits);
+    }
+
+    /**
+     * 多线程下单，返回每秒提交的订单数
+     */
+    private double run(boolean groupCommit, int ordersPerThread) throws Exception {
+        OrderSubmitPipeline pipeline = pipeline(groupCommit);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                long userId = i;
+                tasks.add(() -> {
+                    for (int j = 0; j < ordersPerThread; j++) {
+                        Orders orders = Orders.builder().userId(userId).number(userId + "-" + j).build();
+                        pipeline.submitAndWait(orders, Collections.singletonList(new OrderDetail()));
+                    }
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+            return THREADS * ordersPerThread / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdown();
+            pipeline.stop();
+        }
+    }
+
+    private OrderSubmitPipeline pipeline(boolean groupCommit) {
+        OrderMapper orderMapper = mock(OrderMapper.class);
+        doAnswer(invocation -> {
+            List<Orders> ordersList = invocation.getArgument(0);
+            ordersList.forEach(orders -> orders.setId(ids.incrementAndGet()));
+            synchronized (logDevice) {
+                Thread.sleep(COMMIT_MILLIS);
+            }
+            commits.incrementAndGet();
+            return null;
+        }).when(orderMapper).insertBatch(anyList());
+
+        OrderWriter orderWriter = new OrderWriter();
+        ReflectionTestUtils.setField(orderWriter, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderWriter, "orderDetailMapper", mock(OrderDetailMapper.class));
+        ReflectionTestUtils.setField(orderWriter, "cartStore", mock(CartStore.class));
+        ReflectionTestUtils.setField(orderWriter, "idBloomFilters", mock(IdBloomFilters.class));
+        ReflectionTestUtils.setField(orderWriter, "eventPublisher", mock(ApplicationEventPublisher.class));
+
+        OrderProperties orderProperties = new OrderProperties();
+        orderProperties.setGroupCommit(groupCommit);
+
+        OrderSubmitPipeline pipeline = new OrderSubmitPipeline();
+        ReflectionTestUtils.setField(pipeline, "orderWriter", orderWriter);
+        ReflectionTestUtils.setField(pipeline, "orderProperties", orderProperties);
+        pipeline.start();
+        return pipeline;
+    }
+}
@@ -0,0 +1,167 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 批量提交时下单方等待超时放弃与写入线程取走订单之间的竞争
+ */
+class PendingOrderTest {
+
+    private static final long TIMEOUT_MILLIS = 200;
+
+    private final OrderWriter orderWriter = mock(OrderWriter.class);
+
+    private final OrderSubmitPipeline pipeline = new OrderSubmitPipeline();
+
+    //写入线程提交过的订单
+    private final List<Orders> written = Collections.synchronizedList(new ArrayList<>());
+
+    //第一次写入开始后计数，放行前写入一直阻塞，模拟缓慢的事务
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @BeforeEach
+    void setUp() {
+        AtomicLong ids = new AtomicLong();
+        doAnswer(invocation -> {
+            writing.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            List<PendingOrder> batch = invocation.getArgument(0);
+            for (PendingOrder pendingOrder : batch) {
+                pendingOrder.getOrders().setId(ids.incrementAndGet());
+                written.add(pendingOrder.getOrders());
+            }
+            return null;
+        }).when(orderWriter).write(anyList());
+
+        OrderProperties orderProperties = new OrderProperties();
+        orderProperties.setGroupCommit(true);
+        orderProperties.setBatchSize(1);
+        orderProperties.setLingerMillis(0);
+        orderProperties.setSubmitTimeoutMillis(TIMEOUT_MILLIS);
+
+        ReflectionTestUtils.setField(pipeline, "orderWriter", orderWriter);
+        ReflectionTestUtils.setField(pipeline, "orderProperties", orderProperties);
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        pipeline.stop();
+        executor.shutdownNow();
+    }
+
+    private static Orders order(String number) {
+        return Orders.builder().number(number).build();
+    }
+
+    private static PendingOrder pending() {
+        return new PendingOrder(order("1"), Collections.singletonList(new OrderDetail()));
+    }
+
+    @Test
+    void claimedOrderCannotBeAbandoned() {
+        PendingOrder pendingOrder = pending();
+        assertTrue(pendingOrder.claim());
+        assertFalse(pendingOrder.abandon());
+        //逐个重试时会再次取走同一订单
+        assertTrue(pendingOrder.claim());
+    }
+
+    @Test
+    void abandonedOrderCannotBeClaimed() {
+        PendingOrder pendingOrder = pending();
+        assertTrue(pendingOrder.abandon());
+        assertFalse(pendingOrder.claim());
+        assertFalse(pendingOrder.abandon());
+    }
+
+    @Test
+    void exactlyOneOfClaimAndAbandonWins() throws Exception {
+        ExecutorService racers = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                PendingOrder pendingOrder = pending();
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                Future<Boolean> claimed = racers.submit(() -> {
+                    barrier.await();
+                    return pendingOrder.claim();
+                });
+                Future<Boolean> abandoned = racers.submit(() -> {
+                    barrier.await();
+                    return pendingOrder.abandon();
+                });
+                assertNotEquals(claimed.get(), abandoned.get(), "第" + i + "次竞争");
+            }
+        } finally {
+            racers.shutdownNow();
+        }
+    }
+
+    @Test
+    void timeoutWhileQueuedAbandonsOrder() throws Exception {
+        //第一个订单占住写入线程
+        Orders first = order("1");
+        Future<Orders> firstResult = executor.submit(() -> pipeline.submitAndWait(first, new ArrayList<>()));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        //第二个订单在队列中等待超时，下单失败
+        Orders second = order("2");
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> pipeline.submitAndWait(second, new ArrayList<>()));
+        assertEquals(MessageConstant.ORDER_SUBMIT_FAILED, e.getMessage());
+
+        //写入线程恢复后跳过已放弃的订单
+        release.countDown();
+        assertSame(first, firstResult.get(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        assertEquals(Collections.singletonList(first), written);
+    }
+
+    @Test
+    void timeoutWhileWritingWaitsForResult() throws Exception {
+        Orders orders = order("1");
+        Future<Orders> result = executor.submit(() -> pipeline.submitAndWait(orders, new ArrayList<>()));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        //超过等待时间后再完成写入，下单方仍拿到写入结果而不是失败
+        Thread.sleep(TIMEOUT_MILLIS * 2);
+        assertFalse(result.isDone());
+        release.countDown();
+        assertSame(orders, result.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, orders.getId());
+        assertEquals(Collections.singletonList(orders), written);
+    }
+}
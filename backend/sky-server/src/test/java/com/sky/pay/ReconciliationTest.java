@@ -0,0 +1,151 @@
+package com.sky.pay;
+
+import com.sky.entity.Orders;
+import com.sky.entity.ReconcileDiff;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.ReconcileDiffMapper;
+import com.sky.properties.PayProperties;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.sky.pay.SortedTradeBillTest.HEADER;
+import static com.sky.pay.SortedTradeBillTest.row;
+import static com.sky.pay.SortedTradeBillTest.write;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReconciliationTest {
+
+    private static final LocalDate BILL_DATE = LocalDate.of(2024, 5, 1);
+
+    @TempDir
+    Path dir;
+
+    private final Reconciliation reconciliation = new Reconciliation();
+
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+
+    private final ReconcileDiffMapper reconcileDiffMapper = mock(ReconcileDiffMapper.class);
+
+    //每批写入时复制一份，写入后缓冲区会被清空
+    private final List<List<ReconcileDiff>> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+        SqlSession sqlSession = mock(SqlSession.class);
+        when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+        when(sqlSession.getMapper(OrderMapper.class)).thenReturn(orderMapper);
+        doAnswer(invocation -> batches.add(new ArrayList<>(invocation.getArgument(0))))
+                .when(reconcileDiffMapper).insertBatch(anyList());
+
+        PayProperties payProperties = new PayProperties();
+        payProperties.setReconcileChunkSize(2);
+        payProperties.setReconcileBatchSize(2);
+
+        ReflectionTestUtils.setField(reconciliation, "sqlSessionFactory", sqlSessionFactory);
+        ReflectionTestUtils.setField(reconciliation, "reconcileDiffMapper", reconcileDiffMapper);
+        ReflectionTestUtils.setField(reconciliation, "payProperties", payProperties);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenOrders(Orders... orders) {
+        Cursor<Orders> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(Arrays.asList(orders).iterator());
+        when(orderMapper.cursorPaidByCheckoutTime(BILL_DATE.atStartOfDay(), BILL_DATE.plusDays(1).atStartOfDay()))
+                .thenReturn(cursor);
+    }
+
+    private static Orders order(long id, String number, String amount) {
+        return Orders.builder().id(id).number(number).amount(new BigDecimal(amount)).build();
+    }
+
+    private List<ReconcileDiff> diffs() {
+        return batches.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    @Test
+    void matchingBillAndOrdersHaveNoDiff() throws IOException {
+        Path bill = write(dir, HEADER,
+                row("1002", "SUCCESS", "20.00"),
+                row("1001", "SUCCESS", "10.00"),
+                row("1003", "SUCCESS", "30.00"));
+        givenOrders(order(1, "1001", "10.00"), order(2, "1002", "20.00"), order(3, "1003", "30.00"));
+
+        assertEquals(0, reconciliation.reconcile(BILL_DATE, bill));
+        assertEquals(0, batches.size());
+        verify(reconcileDiffMapper).deleteByBillDate(BILL_DATE);
+    }
+
+    @Test
+    void reportsBillOnlyOrderOnlyAndAmountMismatch() throws IOException {
+        //账单跨3个排序块：1001、1002 | 1004、1005 | 1006
+        Path bill = write(dir, HEADER,
+                row("1005", "SUCCESS", "50.00"),
+                row("1001", "SUCCESS", "10.00"),
+                row("1002", "SUCCESS", "20.00"),
+                row("1004", "SUCCESS", "40.00"),
+                row("1006", "SUCCESS", "60.00"),
+                row("1003", "REFUND", "30.00"),
+                "总交易单数,应结订单总金额",
+                "`5,`180.00");
+        givenOrders(order(1, "1001", "10.00"),
+                order(3, "1003", "30.00"),
+                order(4, "1004", "40.00"),
+                order(5, "1005", "55.00"),
+                order(7, "1007", "70.00"));
+
+        assertEquals(5, reconciliation.reconcile(BILL_DATE, bill));
+
+        List<ReconcileDiff> diffs = diffs();
+        assertEquals(Arrays.asList("1002", "1003", "1005", "1006", "1007"),
+                diffs.stream().map(ReconcileDiff::getOutTradeNo).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(ReconcileDiff.MISSING_ORDER, ReconcileDiff.MISSING_BILL,
+                        ReconcileDiff.AMOUNT_MISMATCH, ReconcileDiff.MISSING_ORDER, ReconcileDiff.MISSING_BILL),
+                diffs.stream().map(ReconcileDiff::getType).collect(Collectors.toList()));
+        //每批2条，共3批
+        assertEquals(3, batches.size());
+
+        ReconcileDiff billOnly = diffs.get(0);
+        assertEquals("42001002", billOnly.getTransactionId());
+        assertEquals(new BigDecimal("20.00"), billOnly.getBillAmount());
+        assertNull(billOnly.getOrderId());
+
+        ReconcileDiff orderOnly = diffs.get(1);
+        assertEquals(3L, orderOnly.getOrderId());
+        assertNull(orderOnly.getBillAmount());
+
+        ReconcileDiff mismatch = diffs.get(2);
+        assertEquals(new BigDecimal("50.00"), mismatch.getBillAmount());
+        assertEquals(new BigDecimal("55.00"), mismatch.getOrderAmount());
+        assertEquals(BILL_DATE, mismatch.getBillDate());
+    }
+
+    @Test
+    void emptyBillReportsAllOrdersMissing() throws IOException {
+        Path bill = write(dir, HEADER, "总交易单数,应结订单总金额", "`0,`0.00");
+        givenOrders(order(1, "1001", "10.00"));
+
+        assertEquals(1, reconciliation.reconcile(BILL_DATE, bill));
+        assertEquals(ReconcileDiff.MISSING_BILL, diffs().get(0).getType());
+    }
+}
@@ -0,0 +1,97 @@
+package com.sky.pay;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SortedTradeBillTest {
+
+    static final String HEADER = "交易时间,公众账号ID,商户号,微信订单号,商户订单号,交易状态,应结订单金额,商品名称";
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 生成一行账单记录，字段均以`开头
+     */
+    static String row(String outTradeNo, String state, String amount) {
+        return String.join(",", "`2024-05-01 10:00:00", "`wx0001", "`1600000000", "`4200" + outTradeNo,
+                "`" + outTradeNo, "`" + state, "`" + amount, "`苍穹外卖订单,含逗号");
+    }
+
+    static Path write(Path dir, String... lines) throws IOException {
+        Path bill = dir.resolve("bill.csv");
+        Files.write(bill, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return bill;
+    }
+
+    static List<String> drain(SortedTradeBill bill) {
+        List<String> numbers = new ArrayList<>();
+        BillRecord record;
+        while ((record = bill.next()) != null) {
+            numbers.add(record.getOutTradeNo());
+        }
+        return numbers;
+    }
+
+    @Test
+    void mergesChunksInOutTradeNoOrder() throws IOException {
+        Path file = write(dir, HEADER,
+                row("1005", "SUCCESS", "1.00"),
+                row("1001", "SUCCESS", "2.00"),
+                row("1004", "SUCCESS", "3.00"),
+                row("1002", "SUCCESS", "4.00"),
+                row("1003", "SUCCESS", "5.00"));
+
+        try (SortedTradeBill bill = new SortedTradeBill(file, 2)) {
+            assertEquals(Arrays.asList("1001", "1002", "1003", "1004", "1005"), drain(bill));
+            assertEquals(5, bill.getCount());
+        }
+    }
+
+    @Test
+    void parsesFieldsByHeaderName() throws IOException {
+        Path file = write(dir, "\uFEFF" + HEADER, row("1001", "SUCCESS", "12.34"));
+
+        try (SortedTradeBill bill = new SortedTradeBill(file, 10)) {
+            BillRecord record = bill.next();
+            assertEquals("1001", record.getOutTradeNo());
+            assertEquals("42001001", record.getTransactionId());
+            assertEquals(1234, record.getAmountCents());
+            assertNull(bill.next());
+        }
+    }
+
+    @Test
+    void skipsRefundsAndStopsAtSummary() throws IOException {
+        Path file = write(dir, HEADER,
+                row("1002", "SUCCESS", "1.00"),
+                row("1001", "REFUND", "1.00"),
+                row("1003", "SUCCESS", "1.00"),
+                "总交易单数,应结订单总金额,退款总金额,充值券退款总金额,手续费总金额,订单总金额,申请退款总金额",
+                "`3,`2.00,`1.00,`0.00,`0.01,`3.00,`1.00");
+
+        try (SortedTradeBill bill = new SortedTradeBill(file, 10)) {
+            assertEquals(Arrays.asList("1002", "1003"), drain(bill));
+            assertEquals(2, bill.getCount());
+        }
+    }
+
+    @Test
+    void rejectsBillWithoutRequiredColumn() throws IOException {
+        Path file = write(dir, "交易时间,商户订单号,交易状态", "`2024-05-01 10:00:00,`1001,`SUCCESS");
+
+        assertThrows(IllegalArgumentException.class, () -> new SortedTradeBill(file, 10));
+    }
+}
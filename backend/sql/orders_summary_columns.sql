@@ -0,0 +1,7 @@
+-- 订单冗余摘要字段：下单时写入，订单列表直接读取，无需再查询订单明细
+alter table orders
+    add column order_dishes varchar(500) null comment '订单菜品摘要，格式：宫保鸡丁*3',
+    add column item_count   int          null comment '商品份数',
+    add column first_image  varchar(255) null comment '第一个商品的图片';
+
+-- 历史订单由 OrderSummaryBackfillTask 分批回填
@@ -0,0 +1,14 @@
+-- 支付回调收件箱：回调解密后按微信支付交易号去重写入并立即应答，由 PayNotifyProcessor 异步处理
+create table pay_notify
+(
+    id             bigint auto_increment primary key,
+    transaction_id varchar(32) not null comment '微信支付交易号',
+    out_trade_no   varchar(50) not null comment '商户订单号',
+    success_time   datetime    null comment '微信支付的支付完成时间',
+    status         tinyint     not null default 0 comment '处理状态 0待处理 1已处理',
+    attempts       int         not null default 0 comment '处理失败次数',
+    create_time    datetime    not null comment '收到回调的时间',
+    process_time   datetime    null comment '处理完成的时间',
+    unique key uk_transaction_id (transaction_id),
+    key idx_status_create_time (status, create_time)
+) comment '支付回调收件箱';
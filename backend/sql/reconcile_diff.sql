@@ -0,0 +1,17 @@
+-- 对账差异报告：Reconciliation 将微信支付交易账单与已支付订单按商户订单号归并比对，写入不一致的记录
+create table reconcile_diff
+(
+    id             bigint auto_increment primary key,
+    bill_date      date           not null comment '账单日期',
+    type           tinyint        not null comment '差异类型 1账单有订单无 2订单有账单无 3金额不一致',
+    out_trade_no   varchar(50)    not null comment '商户订单号',
+    transaction_id varchar(32)    null comment '微信支付交易号',
+    order_id       bigint         null comment '订单id',
+    order_amount   decimal(10, 2) null comment '订单金额',
+    bill_amount    decimal(10, 2) null comment '账单金额',
+    create_time    datetime       not null,
+    key idx_bill_date (bill_date)
+) comment '对账差异报告';
+
+-- 对账按支付时间范围、订单号顺序流式读取订单
+alter table orders add index idx_checkout_time_number (checkout_time, number);
@@ -0,0 +1,19 @@
+-- 退款发件箱：取消、拒单时与订单状态在同一事务中写入退款意图，由 RefundOutbox 批量调用微信退款接口
+create table refund
+(
+    id              bigint auto_increment primary key,
+    order_id        bigint         not null comment '订单id',
+    out_trade_no    varchar(50)    not null comment '商户订单号',
+    out_refund_no   varchar(64)    not null comment '商户退款单号',
+    refund_amount   decimal(10, 2) not null comment '退款金额',
+    total_amount    decimal(10, 2) not null comment '原订单金额',
+    status          tinyint        not null default 0 comment '退款状态 0待退款 1已退款 2退款失败 3微信已受理、待查询退款结果',
+    attempts        int            not null default 0 comment '调用退款接口失败的次数',
+    next_retry_time datetime       not null comment '下次调用退款接口的时间',
+    refund_id       varchar(32)    null comment '微信支付退款单号',
+    message         varchar(255)   null comment '最近一次失败的原因',
+    create_time     datetime       not null,
+    update_time     datetime       null,
+    unique key uk_out_refund_no (out_refund_no),
+    key idx_status_next_retry_time (status, next_retry_time)
+) comment '退款发件箱';
@@ -0,0 +1,24 @@
+-- 购物车商品唯一键：同一用户的同一菜品（同口味）或套餐只保留一行
+-- dish_id、setmeal_id、dish_flavor 可能为空，唯一索引中空值互不冲突，因此使用生成列 cart_key 参与唯一键
+
+-- 1、合并已存在的重复行
+update shopping_cart sc
+    join (select min(id) as keep_id, sum(number) as total
+          from shopping_cart
+          group by user_id, dish_id, setmeal_id, dish_flavor
+          having count(*) > 1) d on sc.id = d.keep_id
+set sc.number = d.total;
+
+delete sc from shopping_cart sc
+    join shopping_cart k
+        on sc.user_id = k.user_id
+        and sc.dish_id <=> k.dish_id
+        and sc.setmeal_id <=> k.setmeal_id
+        and sc.dish_flavor <=> k.dish_flavor
+        and sc.id > k.id;
+
+-- 2、添加生成列和唯一键
+alter table shopping_cart
+    add column cart_key varchar(100) generated always as
+        (concat(ifnull(dish_id, ''), '|', ifnull(setmeal_id, ''), '|', ifnull(dish_flavor, ''))) stored,
+    add unique key uk_user_cart (user_id, cart_key);